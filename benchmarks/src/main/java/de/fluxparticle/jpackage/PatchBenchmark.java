@@ -0,0 +1,108 @@
+package de.fluxparticle.jpackage;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.util.Collections.emptyList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PatchBenchmark {
+
+    @Param({"TINY", "SMALL", "LARGE", "HUGE", "MULTI_RELEASE"})
+    private SyntheticJar shape;
+
+    private Path jar;
+
+    private long size;
+
+    private byte[] moduleInfo;
+
+    private Path output;
+
+    @Setup
+    public void setup() throws IOException {
+        jar = shape.get();
+        size = Files.size(jar);
+        moduleInfo = new BytecodeAnalyzer(emptyList()).analyse(jar, "synthetic").toByteArray();
+        output = Files.createTempFile("patched-", ".jar");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(output);
+    }
+
+    /**
+     * Bytes of input jar rewritten per second, next to the number of jars.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+
+    }
+
+    /**
+     * Copying the entries as they are and appending the descriptor.
+     */
+    @Benchmark
+    public void raw(Bytes bytes) throws IOException {
+        JarPatcher.patch(jar, moduleInfo, output);
+        bytes.bytes += size;
+    }
+
+    /**
+     * Inflating and deflating every entry.
+     */
+    @Benchmark
+    public void stream(Bytes bytes) throws IOException {
+        JarPatcher.patchStream(jar, moduleInfo, output);
+        bytes.bytes += size;
+    }
+
+}
@@ -0,0 +1,83 @@
+package de.fluxparticle.jpackage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.jar.JarFile;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ProbeBenchmark {
+
+    @Param({"TINY", "SMALL", "LARGE", "HUGE", "MULTI_RELEASE"})
+    private SyntheticJar shape;
+
+    private Path jar;
+
+    @Setup
+    public void setup() throws IOException {
+        jar = shape.get();
+    }
+
+    /**
+     * Reading the central directory, as done for every jar of every build.
+     */
+    @Benchmark
+    public boolean jarMetadata() throws IOException {
+        return JarMetadata.read(jar).isModular();
+    }
+
+    /**
+     * The cached lookup a second probe of the same jar gets.
+     */
+    @Benchmark
+    public boolean jarMetadataCached() throws IOException {
+        return JarMetadata.of(jar).isModular();
+    }
+
+    /**
+     * The former implementation: open the jar and look at every entry.
+     */
+    @Benchmark
+    public boolean jarFile() throws IOException {
+        try (JarFile jarFile = new JarFile(jar.toFile())) {
+            return jarFile.stream()
+                    .anyMatch(entry -> entry.getName().equals(JarPatcher.MODULE_INFO));
+        }
+    }
+
+}
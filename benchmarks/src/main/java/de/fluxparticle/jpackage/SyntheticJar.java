@@ -0,0 +1,175 @@
+package de.fluxparticle.jpackage;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACC_STATIC;
+import static org.objectweb.asm.Opcodes.ALOAD;
+import static org.objectweb.asm.Opcodes.INVOKEINTERFACE;
+import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
+import static org.objectweb.asm.Opcodes.INVOKESTATIC;
+import static org.objectweb.asm.Opcodes.IRETURN;
+import static org.objectweb.asm.Opcodes.RETURN;
+import static org.objectweb.asm.Opcodes.V11;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+public enum SyntheticJar {
+
+    TINY(10, 0, false),
+
+    SMALL(1_000, 1 << 20, false),
+
+    LARGE(100_000, 16 << 20, false),
+
+    HUGE(10_000, 300 << 20, false),
+
+    MULTI_RELEASE(1_000, 1 << 20, true);
+
+    private static final int CLASSES_PER_PACKAGE = 100;
+
+    private static final int BLOB_SIZE = 1 << 20;
+
+    private static final int[] VERSIONS = {9, 11, 17};
+
+    private final int classes;
+
+    private final int blobBytes;
+
+    private final boolean multiRelease;
+
+    SyntheticJar(int classes, int blobBytes, boolean multiRelease) {
+        this.classes = classes;
+        this.blobBytes = blobBytes;
+        this.multiRelease = multiRelease;
+    }
+
+    /**
+     * The jar of this shape in the benchmark directory. It is generated on first use and then reused by all forks and
+     * runs, the content only depends on the shape.
+     */
+    Path get() throws IOException {
+        Path dir = Files.createDirectories(Path.of(System.getProperty("java.io.tmpdir"), "jpackage-benchmarks"));
+        Path jar = dir.resolve(name().toLowerCase().replace('_', '-') + ".jar");
+        if (!Files.exists(jar)) {
+            Path tmp = Files.createTempFile(dir, "tmp-", ".jar");
+            write(tmp);
+            Files.move(tmp, jar, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return jar;
+    }
+
+    private void write(Path file) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (multiRelease) {
+            manifest.getMainAttributes().put(Attributes.Name.MULTI_RELEASE, "true");
+        }
+
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(file), manifest)) {
+            for (int i = 0; i < classes; i++) {
+                out.putNextEntry(new JarEntry(className(i) + ".class"));
+                out.write(classFile(i));
+                out.closeEntry();
+            }
+
+            if (multiRelease) {
+                for (int version : VERSIONS) {
+                    for (int i = 0; i < classes; i += 10) {
+                        out.putNextEntry(new JarEntry("META-INF/versions/" + version + "/" + className(i) + ".class"));
+                        out.write(classFile(i));
+                        out.closeEntry();
+                    }
+                }
+            }
+
+            Random random = new Random(classes);
+            byte[] blob = new byte[BLOB_SIZE];
+            for (int offset = 0, n = 0; offset < blobBytes; offset += BLOB_SIZE, n++) {
+                random.nextBytes(blob);
+                int size = Math.min(BLOB_SIZE, blobBytes - offset);
+                storeEntry(out, "blobs/blob" + n + ".bin", blob, size);
+            }
+        }
+    }
+
+    private static void storeEntry(JarOutputStream out, String name, byte[] data, int size) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, size);
+
+        JarEntry entry = new JarEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(size);
+        entry.setCompressedSize(size);
+        entry.setCrc(crc.getValue());
+
+        out.putNextEntry(entry);
+        out.write(data, 0, size);
+        out.closeEntry();
+    }
+
+    private static String className(int i) {
+        return "synthetic/p" + (i / CLASSES_PER_PACKAGE) + "/C" + i;
+    }
+
+    /**
+     * A class that uses a JDK interface and calls the previous class, so descriptor generation has some work to do.
+     */
+    private static byte[] classFile(int i) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V11, ACC_PUBLIC, className(i), null, "java/lang/Object", null);
+
+        MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, 0);
+        init.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        MethodVisitor run = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "run", "(Ljava/util/List;)I", null, null);
+        run.visitCode();
+        if (i > 0) {
+            run.visitVarInsn(ALOAD, 0);
+            run.visitMethodInsn(INVOKESTATIC, className(i - 1), "run", "(Ljava/util/List;)I", false);
+        } else {
+            run.visitVarInsn(ALOAD, 0);
+            run.visitMethodInsn(INVOKEINTERFACE, "java/util/List", "size", "()I", true);
+        }
+        run.visitInsn(IRETURN);
+        run.visitMaxs(0, 0);
+        run.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+}
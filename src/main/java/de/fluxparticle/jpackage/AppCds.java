@@ -0,0 +1,230 @@
+package de.fluxparticle.jpackage;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.spi.ToolProvider;
+import java.util.stream.Stream;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class AppCds {
+
+    private static final String JAVA_OPTIONS = "[JavaOptions]";
+
+    private static final String SHARED_ARCHIVE_FILE = "-XX:SharedArchiveFile=";
+
+    private static volatile Boolean jlinkGeneratesArchive;
+
+    private final Log log;
+
+    private final AppImage image;
+
+    private final List<String> trainingArgs;
+
+    private final long timeout;
+
+    /**
+     * @param trainingArgs the arguments the application is started with to train and to measure startup
+     * @param timeout      seconds after which a run is terminated
+     */
+    AppCds(Log log, AppImage image, List<String> trainingArgs, long timeout) {
+        this.log = log;
+        this.image = image;
+        this.trainingArgs = trainingArgs;
+        this.timeout = timeout;
+    }
+
+    /**
+     * {@code true} if jlink of the running JDK has the {@code --generate-cds-archive} plugin.
+     */
+    static boolean jlinkGeneratesArchive() {
+        if (jlinkGeneratesArchive == null) {
+            StringWriter out = new StringWriter();
+            Optional<ToolProvider> jlink = ToolProvider.findFirst("jlink");
+            jlinkGeneratesArchive = jlink.isPresent()
+                    && jlink.get().run(new PrintWriter(out), new PrintWriter(out), "--list-plugins") == 0
+                    && out.toString().contains("--generate-cds-archive");
+        }
+        return jlinkGeneratesArchive;
+    }
+
+    /**
+     * Dumps the default CDS archive of a freshly linked runtime, which a dynamic archive is based on. jlink of JDK 17
+     * cannot do this itself ({@code --generate-cds-archive} came later) and the launcher can not do it either, as an
+     * archive dumped with the module path of the application does not allow dynamic archives.
+     *
+     * @param stripNativeCommands delete the commands of the runtime afterwards, as
+     *                            {@code --strip-native-commands} would have done
+     * @return {@code true} if the archive was dumped
+     */
+    static boolean dumpBaseArchive(Path runtime, boolean stripNativeCommands, Log log) throws IOException, InterruptedException {
+        Path bin = runtime.resolve("bin");
+        Path java = bin.resolve(AppImage.isWindows() ? "java.exe" : "java");
+
+        Process process = new ProcessBuilder(java.toString(), "-Xshare:dump")
+                .redirectErrorStream(true)
+                .redirectOutput(Redirect.DISCARD)
+                .start();
+        boolean dumped = process.waitFor() == 0;
+        if (!dumped) {
+            log.warn("Cannot dump base CDS archive of " + runtime);
+        }
+
+        if (stripNativeCommands) {
+            try (Stream<Path> files = Files.list(bin)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    if (!file.getFileName().toString().endsWith(".dll")) {
+                        Files.delete(file);
+                    }
+                }
+            }
+            try (Stream<Path> files = Files.list(bin)) {
+                if (files.findAny().isEmpty()) {
+                    Files.delete(bin);
+                }
+            }
+        }
+
+        return dumped;
+    }
+
+    /**
+     * {@code true} if {@code runtime} has the default CDS archive of its classes.
+     */
+    static boolean hasBaseArchive(Path runtime) {
+        return Files.exists(runtime.resolve("lib/server/classes.jsa"))
+                || Files.exists(runtime.resolve("bin/server/classes.jsa"));
+    }
+
+    Path getArchive() {
+        return image.getAppDir().resolve(image.getName() + ".jsa");
+    }
+
+    /**
+     * Records a dynamic archive with a training run and adds it to the launcher configuration. The archive is also
+     * written if the application has to be terminated, as long as it reacts to the signal.
+     *
+     * @return {@code false} if no archive was recorded
+     */
+    boolean train(Path logFile) throws IOException, InterruptedException {
+        Path archive = getArchive();
+        run("-XX:ArchiveClassesAtExit=" + archive, Redirect.to(logFile.toFile()));
+        if (!Files.exists(archive)) {
+            log.warn("No CDS archive recorded, see " + logFile);
+            Files.deleteIfExists(archive);
+            return false;
+        }
+
+        enable();
+        return true;
+    }
+
+    /**
+     * The mean time in milliseconds of {@code runs} runs of the launcher or -1 if a run did not finish in time.
+     */
+    long measure(int runs) throws IOException, InterruptedException {
+        long total = 0;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            if (run(null, Redirect.DISCARD) < 0) {
+                return -1;
+            }
+            total += System.nanoTime() - start;
+        }
+        return total / runs / 1_000_000;
+    }
+
+    /**
+     * Adds the archive to the launcher configuration, the same line {@code --java-options} would have created.
+     */
+    private void enable() throws IOException {
+        Path config = image.getConfig();
+        List<String> lines = new ArrayList<>(Files.readAllLines(config, StandardCharsets.UTF_8));
+        String line = "java-options=" + SHARED_ARCHIVE_FILE + "$APPDIR/" + getArchive().getFileName();
+
+        int section = lines.indexOf(JAVA_OPTIONS);
+        if (section < 0) {
+            lines.add(JAVA_OPTIONS);
+            lines.add(line);
+        } else {
+            int index = section + 1;
+            while (index < lines.size() && lines.get(index).startsWith("java-options=")) {
+                index++;
+            }
+            lines.add(index, line);
+        }
+
+        Files.write(config, lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Removes an archive of an earlier training from the image.
+     */
+    void disable() throws IOException {
+        Path config = image.getConfig();
+        List<String> lines = new ArrayList<>(Files.readAllLines(config, StandardCharsets.UTF_8));
+        if (lines.removeIf(line -> line.startsWith("java-options=" + SHARED_ARCHIVE_FILE))) {
+            Files.write(config, lines, StandardCharsets.UTF_8);
+        }
+        Files.deleteIfExists(getArchive());
+    }
+
+    /**
+     * @return the exit code or -1 if the process had to be terminated
+     */
+    private long run(String javaToolOptions, Redirect output) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(image.getLauncher().toString());
+        command.addAll(trainingArgs);
+
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(output);
+        if (javaToolOptions != null) {
+            builder.environment().put("JAVA_TOOL_OPTIONS", javaToolOptions);
+        } else {
+            builder.environment().remove("JAVA_TOOL_OPTIONS");
+        }
+
+        Process process = builder.start();
+        process.getOutputStream().close();
+
+        if (!process.waitFor(timeout, TimeUnit.SECONDS)) {
+            log.warn("Terminating " + image.getLauncher().getFileName() + " after " + timeout + "s");
+            process.destroy();
+            if (!process.waitFor(timeout, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+            return -1;
+        }
+
+        return process.exitValue();
+    }
+
+}
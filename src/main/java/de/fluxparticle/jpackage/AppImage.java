@@ -0,0 +1,95 @@
+package de.fluxparticle.jpackage;
+
+import java.nio.file.Path;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class AppImage {
+
+    private static final String OS = System.getProperty("os.name").toLowerCase();
+
+    private static final boolean MAC = OS.startsWith("mac");
+
+    private static final boolean WINDOWS = OS.startsWith("win");
+
+    private final Path path;
+
+    private final String name;
+
+    /**
+     * The layout of the app-image jpackage creates for {@code --name name --dest dest} on the current platform.
+     */
+    AppImage(Path dest, String name) {
+        this.path = dest.resolve(MAC ? name + ".app" : name);
+        this.name = name;
+    }
+
+    static boolean isWindows() {
+        return WINDOWS;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Path getAppDir() {
+        if (MAC) {
+            return path.resolve("Contents/app");
+        }
+        if (WINDOWS) {
+            return path.resolve("app");
+        }
+        return path.resolve("lib/app");
+    }
+
+    /**
+     * The launcher configuration, containing main module and java options.
+     */
+    Path getConfig() {
+        return getAppDir().resolve(name + ".cfg");
+    }
+
+    Path getModsDir() {
+        return getAppDir().resolve("mods");
+    }
+
+    Path getRuntimeDir() {
+        if (MAC) {
+            return path.resolve("Contents/runtime/Contents/Home");
+        }
+        if (WINDOWS) {
+            return path.resolve("runtime");
+        }
+        return path.resolve("lib/runtime");
+    }
+
+    Path getLauncher() {
+        if (MAC) {
+            return path.resolve("Contents/MacOS").resolve(name);
+        }
+        if (WINDOWS) {
+            return path.resolve(name + ".exe");
+        }
+        return path.resolve("bin").resolve(name);
+    }
+
+}
@@ -0,0 +1,62 @@
+package de.fluxparticle.jpackage;
+
+import org.apache.maven.artifact.Artifact;
+
+import java.util.regex.Pattern;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class ArtifactPattern {
+
+    private final Pattern groupId;
+
+    private final Pattern artifactId;
+
+    /**
+     * @param groupId    the groupId, {@code *} matches any characters
+     * @param artifactId the artifactId, {@code *} matches any characters, {@code null} matches every artifact of the
+     *                   group
+     */
+    ArtifactPattern(String groupId, String artifactId) {
+        this.groupId = compile(groupId);
+        this.artifactId = artifactId != null ? compile(artifactId) : null;
+    }
+
+    /**
+     * Parses a pattern of the form {@code groupId:artifactId}.
+     *
+     * @throws IllegalArgumentException if the pattern is not of that form
+     */
+    static ArtifactPattern parse(String pattern) {
+        String[] parts = pattern.trim().split(":");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("invalid pattern: " + pattern);
+        }
+        return new ArtifactPattern(parts[0], parts[1]);
+    }
+
+    boolean matches(Artifact artifact) {
+        return groupId.matcher(artifact.getGroupId()).matches()
+                && (artifactId == null || artifactId.matcher(artifact.getArtifactId()).matches());
+    }
+
+    private static Pattern compile(String glob) {
+        return Pattern.compile(Pattern.quote(glob).replace("*", "\\E.*\\Q"));
+    }
+
+}
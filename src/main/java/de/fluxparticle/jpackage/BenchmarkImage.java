@@ -0,0 +1,223 @@
+package de.fluxparticle.jpackage;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static java.lang.String.join;
+import static java.util.Collections.emptyList;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+@Mojo(name = "benchmark")
+public class BenchmarkImage extends AbstractMojo {
+
+    @Parameter(defaultValue = "${project}", required = true)
+    private MavenProject project;
+
+    @Parameter(property = "skip", readonly = true)
+    private boolean skip;
+
+    @Parameter(property = "name", readonly = true)
+    private String name;
+
+    /**
+     * Number of measured launches of the image.
+     */
+    @Parameter(property = "benchmarkRuns", defaultValue = "10")
+    private int benchmarkRuns;
+
+    /**
+     * Launches before the measured ones, e.g. to fill the file system cache.
+     */
+    @Parameter(property = "warmupRuns", defaultValue = "1")
+    private int warmupRuns;
+
+    /**
+     * Arguments the application is started with.
+     */
+    @Parameter(property = "benchmarkArgs")
+    private String benchmarkArgs;
+
+    /**
+     * Regular expression for a line of the output that marks the application as started. The application is terminated
+     * as soon as it prints the line. Without marker the time until the application exits is measured.
+     */
+    @Parameter(property = "benchmarkMarker")
+    private String benchmarkMarker;
+
+    @Parameter(property = "benchmarkTimeout", defaultValue = "60")
+    private long benchmarkTimeout;
+
+    /**
+     * The result the measurements are compared with. Written by {@code updateBaseline}.
+     */
+    @Parameter(property = "baseline", defaultValue = "${project.basedir}/jpackage-baseline.json")
+    private File baseline;
+
+    /**
+     * Store the result as new baseline instead of comparing with it.
+     */
+    @Parameter(property = "updateBaseline", defaultValue = "false")
+    private boolean updateBaseline;
+
+    /**
+     * Allowed increase of the median time to main over the baseline in percent, negative to not compare.
+     */
+    @Parameter(property = "maxTimeToMainRegression", defaultValue = "10")
+    private double maxTimeToMainRegression;
+
+    /**
+     * Allowed increase of the median peak RSS over the baseline in percent, negative to not compare.
+     */
+    @Parameter(property = "maxPeakRssRegression", defaultValue = "10")
+    private double maxPeakRssRegression;
+
+    /**
+     * Allowed increase of the image size over the baseline in percent, negative to not compare.
+     */
+    @Parameter(property = "maxImageSizeRegression", defaultValue = "5")
+    private double maxImageSizeRegression;
+
+    /**
+     * Allowed increase of the number of loaded classes over the baseline in percent, negative to not compare.
+     */
+    @Parameter(property = "maxLoadedClassesRegression", defaultValue = "5")
+    private double maxLoadedClassesRegression;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            return;
+        }
+
+        if (name == null) {
+            throw new MojoFailureException("name required");
+        }
+
+        if (benchmarkRuns < 1) {
+            throw new MojoFailureException("benchmarkRuns must be positive");
+        }
+
+        Pattern marker;
+        try {
+            marker = benchmarkMarker != null ? Pattern.compile(benchmarkMarker) : null;
+        } catch (PatternSyntaxException e) {
+            throw new MojoFailureException("invalid benchmarkMarker: " + e.getMessage());
+        }
+
+        Path target = Path.of(project.getBuild().getDirectory());
+        AppImage image = new AppImage(target, name);
+        if (!Files.isExecutable(image.getLauncher())) {
+            throw new MojoFailureException("No image at " + image.getPath() + ", run jpackage:image first");
+        }
+
+        List<String> args = benchmarkArgs != null ? Arrays.asList(benchmarkArgs.trim().split("\\s+")) : emptyList();
+        StartupBenchmark benchmark = new StartupBenchmark(getLog(), image, args, marker, benchmarkTimeout);
+
+        try {
+            getLog().info("Benchmark: " + image.getLauncher() + " " + join(" ", args));
+
+            for (int i = 0; i < warmupRuns; i++) {
+                measure(benchmark);
+            }
+
+            BenchmarkResult result = new BenchmarkResult();
+            List<Long> nanos = new ArrayList<>();
+            List<Long> peakRssKb = new ArrayList<>();
+            for (int i = 0; i < benchmarkRuns; i++) {
+                StartupBenchmark.Run run = measure(benchmark);
+                result.addRun(run);
+                nanos.add(run.getNanos());
+                peakRssKb.add(run.getPeakRssKb());
+            }
+
+            result.put(BenchmarkResult.TIME_TO_MAIN, median(nanos) / 1_000_000);
+            result.put(BenchmarkResult.PEAK_RSS, median(peakRssKb));
+            result.put(BenchmarkResult.IMAGE_SIZE, FileUtils.size(image.getPath()));
+            result.put(BenchmarkResult.LOADED_CLASSES, benchmark.countLoadedClasses(target.resolve(name + "-classes.log")));
+
+            Path file = target.resolve("jpackage-benchmark.json");
+            result.write(file);
+            getLog().info("Result: " + file);
+
+            Path baselineFile = baseline.toPath();
+            if (updateBaseline) {
+                result.write(baselineFile);
+                BuildImage.printLines(getLog(), result.summary(null));
+                getLog().info("Baseline updated: " + baselineFile);
+                return;
+            }
+
+            if (!Files.exists(baselineFile)) {
+                BuildImage.printLines(getLog(), result.summary(null));
+                getLog().info("No baseline at " + baselineFile + ", run with -DupdateBaseline to create it");
+                return;
+            }
+
+            BenchmarkResult base = BenchmarkResult.read(baselineFile);
+            BuildImage.printLines(getLog(), result.summary(base));
+
+            List<String> regressions = result.regressions(base, Map.of(
+                    BenchmarkResult.TIME_TO_MAIN, maxTimeToMainRegression,
+                    BenchmarkResult.PEAK_RSS, maxPeakRssRegression,
+                    BenchmarkResult.IMAGE_SIZE, maxImageSizeRegression,
+                    BenchmarkResult.LOADED_CLASSES, maxLoadedClassesRegression
+            ));
+            if (!regressions.isEmpty()) {
+                throw new MojoFailureException("Regression against " + baselineFile + ":\n  " + join("\n  ", regressions));
+            }
+        } catch (IOException | InterruptedException e) {
+            throw new MojoExecutionException(e.toString(), e);
+        }
+    }
+
+    private StartupBenchmark.Run measure(StartupBenchmark benchmark) throws IOException, InterruptedException, MojoFailureException {
+        StartupBenchmark.Run run = benchmark.run();
+        if (run == null) {
+            throw new MojoFailureException("Benchmark run of " + name + " failed");
+        }
+        return run;
+    }
+
+    private static long median(List<Long> values) {
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        int middle = sorted.size() / 2;
+        if (sorted.size() % 2 == 0) {
+            return (sorted.get(middle - 1) + sorted.get(middle)) / 2;
+        }
+        return sorted.get(middle);
+    }
+
+}
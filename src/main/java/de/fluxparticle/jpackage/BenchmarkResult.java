@@ -0,0 +1,138 @@
+package de.fluxparticle.jpackage;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class BenchmarkResult {
+
+    static final String TIME_TO_MAIN = "timeToMainMillis";
+
+    static final String PEAK_RSS = "peakRssKb";
+
+    static final String IMAGE_SIZE = "imageBytes";
+
+    static final String LOADED_CLASSES = "loadedClasses";
+
+    private static final List<String> METRICS = List.of(TIME_TO_MAIN, PEAK_RSS, IMAGE_SIZE, LOADED_CLASSES);
+
+    private final Map<String, Long> metrics = new LinkedHashMap<>();
+
+    private final List<StartupBenchmark.Run> runs = new ArrayList<>();
+
+    /**
+     * Sets a metric, -1 if it could not be measured.
+     */
+    void put(String metric, long value) {
+        metrics.put(metric, value);
+    }
+
+    long get(String metric) {
+        return metrics.getOrDefault(metric, -1L);
+    }
+
+    void addRun(StartupBenchmark.Run run) {
+        runs.add(run);
+    }
+
+    /**
+     * Writes the metrics and the single runs as JSON.
+     */
+    void write(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("{\n");
+            for (Map.Entry<String, Long> metric : metrics.entrySet()) {
+                out.write("  " + BuildReport.quote(metric.getKey()) + ": " + metric.getValue() + ",\n");
+            }
+
+            out.write("  \"runs\": [");
+            String delimiter = "\n";
+            for (StartupBenchmark.Run run : runs) {
+                out.write(delimiter); delimiter = ",\n";
+                out.write("    {\"millis\": " + run.getNanos() / 1_000_000 + ", \"rssKb\": " + run.getPeakRssKb() + "}");
+            }
+            out.write("\n  ]\n");
+            out.write("}\n");
+        }
+    }
+
+    /**
+     * Reads the metrics of a result written by {@link #write}.
+     */
+    static BenchmarkResult read(Path file) throws IOException {
+        String json = Files.readString(file, StandardCharsets.UTF_8);
+
+        BenchmarkResult result = new BenchmarkResult();
+        for (String metric : METRICS) {
+            Matcher matcher = Pattern.compile("\"" + metric + "\"\\s*:\\s*(-?\\d+)").matcher(json);
+            if (matcher.find()) {
+                result.put(metric, Long.parseLong(matcher.group(1)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compares all metrics that were measured in both results.
+     *
+     * @param thresholds the allowed increase per metric in percent, metrics without threshold are not compared
+     * @return a description of every metric that increased by more than its threshold
+     */
+    List<String> regressions(BenchmarkResult baseline, Map<String, Double> thresholds) {
+        List<String> regressions = new ArrayList<>();
+        for (String metric : METRICS) {
+            Double threshold = thresholds.get(metric);
+            long value = get(metric);
+            long base = baseline.get(metric);
+            if (threshold == null || threshold < 0 || value < 0 || base <= 0) {
+                continue;
+            }
+
+            double increase = (value - base) * 100.0 / base;
+            if (increase > threshold) {
+                regressions.add(String.format("%s: %d, baseline %d (+%.1f%%, allowed %.1f%%)", metric, value, base, increase, threshold));
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * The metrics with their baseline values as table lines for the log.
+     */
+    List<List<String>> summary(BenchmarkResult baseline) {
+        List<List<String>> lines = new ArrayList<>();
+        lines.add(List.of("metric:", "value:", "baseline:"));
+        for (String metric : METRICS) {
+            long base = baseline != null ? baseline.get(metric) : -1;
+            lines.add(List.of(metric, Long.toString(get(metric)), base >= 0 ? Long.toString(base) : "-"));
+        }
+        return lines;
+    }
+
+}
@@ -1,16 +1,13 @@
 package de.fluxparticle.jpackage;
 
-import com.github.javaparser.StaticJavaParser;
-import com.github.javaparser.ast.CompilationUnit;
-import com.github.javaparser.ast.expr.Name;
-import com.github.javaparser.ast.modules.ModuleDeclaration;
-import com.github.javaparser.ast.modules.ModuleExportsDirective;
-import com.github.javaparser.ast.modules.ModuleRequiresDirective;
+import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.DependencyResolutionRequiredException;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.Execute;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
@@ -20,45 +17,54 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.DefaultProjectBuildingRequest;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.ProjectBuildingRequest;
-import org.apache.maven.shared.transfer.artifact.DefaultArtifactCoordinate;
 import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResolver;
-import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResolverException;
-import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResult;
-import org.objectweb.asm.ClassWriter;
-import org.objectweb.asm.ModuleVisitor;
 
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.FileVisitResult;
-import java.nio.file.FileVisitor;
+import java.io.Reader;
+import java.lang.module.FindException;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReference;
+import java.lang.module.ResolutionException;
+import java.lang.module.ResolvedModule;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.StandardCopyOption;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Scanner;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
-import java.util.jar.Manifest;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.IntStream;
-import java.util.zip.ZipEntry;
+import java.util.stream.Stream;
 
-import static com.github.javaparser.ParserConfiguration.LanguageLevel.JAVA_9;
 import static java.lang.String.join;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptySet;
 import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toCollection;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
-import static org.objectweb.asm.Opcodes.ACC_MANDATED;
-import static org.objectweb.asm.Opcodes.ACC_MODULE;
-import static org.objectweb.asm.Opcodes.ACC_SYNTHETIC;
-import static org.objectweb.asm.Opcodes.V9;
+import static java.util.stream.Collectors.toSet;
 
 /**
  * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
@@ -81,11 +87,13 @@ import static org.objectweb.asm.Opcodes.V9;
 @Execute(phase = LifecyclePhase.COMPILE)
 public class BuildImage extends AbstractMojo {
 
-    private static final Path JAVA_HOME = Path.of(System.getProperty("java.home"));
+    private static final String ANALYZER_JDEPS = "jdeps";
 
-    static {
-        StaticJavaParser.getConfiguration().setLanguageLevel(JAVA_9);
-    }
+    private static final String ANALYZER_BYTECODE = "bytecode";
+
+    private static final String OLD_PREFIX = ".old-";
+
+    private static final String TEMP_PREFIX = ".jpackage-";
 
     @Component
     private ArtifactResolver artifactResolver;
@@ -105,6 +113,197 @@ public class BuildImage extends AbstractMojo {
     @Parameter(property = "mainClass", readonly = true)
     private String mainClass;
 
+    /**
+     * Artifacts that are replaced by a modular variant instead of being fixed, e.g.
+     * {@code <substitution><groupId>org.jetbrains.kotlin</groupId><artifactId>kotlin-stdlib*</artifactId><classifier>modular</classifier></substitution>},
+     * which is the default.
+     */
+    @Parameter
+    private List<Substitution> substitutions;
+
+    /**
+     * Groups of fixed jars that are each merged into a single module, e.g.
+     * {@code <mergeGroup><name>example.libs</name><includes><include>org.example:*</include></includes></mergeGroup>}.
+     * Fewer modules mean less work for the module system at every start of the application.
+     */
+    @Parameter
+    private List<MergeGroup> mergeGroups;
+
+    /**
+     * Merge all fixed jars smaller than this size in kB that are in no merge group into the module
+     * {@code mergedModuleName}. 0 to not merge by size.
+     */
+    @Parameter(property = "mergeThreshold", defaultValue = "0")
+    private long mergeThreshold;
+
+    @Parameter(property = "mergedModuleName", defaultValue = "merged.dependencies")
+    private String mergedModuleName;
+
+    /**
+     * Number of non-modular jars that are fixed in parallel. Defaults to the number of available processors.
+     */
+    @Parameter(property = "threads", defaultValue = "0")
+    private int threads;
+
+    /**
+     * Run jdeps, jpackage and javac as separate processes instead of inside the Maven JVM.
+     */
+    @Parameter(property = "fork", defaultValue = "false")
+    private boolean fork;
+
+    /**
+     * Analyse all non-modular jars with a single jdeps run instead of one run per jar, with {@code analyzer} jdeps.
+     */
+    @Parameter(property = "batchAnalysis", defaultValue = "false")
+    private boolean batchAnalysis;
+
+    /**
+     * Give jdeps only the transitive Maven dependencies of a jar instead of the whole classpath. If that is not
+     * enough, e.g. because Maven mediated a dependency to another path of the tree, the jar is analysed again with
+     * the whole classpath.
+     */
+    @Parameter(property = "scopeModulePath", defaultValue = "true")
+    private boolean scopeModulePath;
+
+    /**
+     * How module descriptors for non-modular jars are computed: {@code bytecode} computes the descriptor in-process
+     * from the class files, {@code jdeps} generates and parses a {@code module-info.java}. Jars with class files the
+     * bytecode analyzer cannot read are analysed with jdeps. Unlike jdeps, the bytecode analyzer does not fail on
+     * referenced packages it cannot find, it warns and leaves them out of the descriptor.
+     */
+    @Parameter(property = "analyzer", defaultValue = ANALYZER_BYTECODE)
+    private String analyzer;
+
+    /**
+     * Resolve the module path of the image in-process before jlink and jpackage run and fail on duplicate modules,
+     * missing modules, cycles and split packages.
+     */
+    @Parameter(property = "validate", defaultValue = "true")
+    private boolean validate;
+
+    /**
+     * Directory of the cache for fixed jars that is shared between builds and projects.
+     */
+    @Parameter(property = "cacheDirectory", defaultValue = "${user.home}/.m2/jpackage-cache")
+    private File cacheDirectory;
+
+    /**
+     * Maximum size of the cache in MB. The least recently used entries are deleted when it grows beyond.
+     */
+    @Parameter(property = "cacheSize", defaultValue = "1024")
+    private long cacheSize;
+
+    @Parameter(property = "useCache", defaultValue = "true")
+    private boolean useCache;
+
+    /**
+     * Link the runtime with a separate jlink run and pass it to jpackage. The runtime is cached and reused as long as
+     * the JDK, the jlink options and the modules of the dependencies do not change.
+     */
+    @Parameter(property = "cacheRuntime", defaultValue = "true")
+    private boolean cacheRuntime;
+
+    /**
+     * Options of the separate jlink run.
+     */
+    @Parameter(property = "jlinkOptions", defaultValue = "--strip-debug --no-header-files --no-man-pages --strip-native-commands")
+    private String jlinkOptions;
+
+    /**
+     * Named set of jlink options that replaces {@code jlinkOptions}: {@code minimal} for the smallest runtime,
+     * {@code fast-startup} for an uncompressed runtime with a CDS archive of its classes and {@code debug} for a runtime
+     * with debug information, all service providers and the debugging and monitoring modules of the JDK. Where jlink
+     * cannot generate the CDS archive, the runtime dumps it after linking. The profile, size, CDS archive and modules
+     * of the image are written to {@code jpackage-report.json}.
+     */
+    @Parameter(property = "profile")
+    private String profile;
+
+    /**
+     * Record an AppCDS archive of the classes the application loads with a training run and add it to the launcher.
+     * Needs the runtime linked by the plugin ({@code cacheRuntime}).
+     */
+    @Parameter(property = "cds", defaultValue = "false")
+    private boolean cds;
+
+    /**
+     * Arguments the application is started with for the training run and the startup measurements. It should exit by
+     * itself, otherwise it is terminated after {@code cdsTimeout} seconds.
+     */
+    @Parameter(property = "cdsTrainingArgs")
+    private String cdsTrainingArgs;
+
+    @Parameter(property = "cdsTimeout", defaultValue = "60")
+    private long cdsTimeout;
+
+    /**
+     * Number of runs the startup time is measured with, before and after recording the archive. 0 to not measure.
+     */
+    @Parameter(property = "cdsRuns", defaultValue = "3")
+    private int cdsRuns;
+
+    /**
+     * Skip jpackage if none of its inputs changed since the last build and only replace the changed modules if the
+     * image keeps them outside of its runtime.
+     */
+    @Parameter(property = "incremental", defaultValue = "true")
+    private boolean incremental;
+
+    /**
+     * Installer types that are built from the app-image, e.g. {@code deb,rpm}. The types are built in parallel, each
+     * only if the app-image or the installer options changed since its last build.
+     */
+    @Parameter(property = "installerTypes")
+    private List<String> installerTypes;
+
+    /**
+     * Additional jpackage options for the installers, e.g. {@code --linux-shortcut --vendor Example}.
+     */
+    @Parameter(property = "installerOptions")
+    private String installerOptions;
+
+    /**
+     * Write the fixed jars so that the same input always gives the same bytes: sorted entries, all with the time
+     * {@code outputTimestamp} (1980-01-01 if it is not set), no extra fields and file attributes.
+     */
+    @Parameter(property = "reproducible", defaultValue = "false")
+    private boolean reproducible;
+
+    /**
+     * The time of the entries in reproducible mode, as ISO 8601 date-time or seconds since the epoch.
+     */
+    @Parameter(property = "outputTimestamp", defaultValue = "${project.build.outputTimestamp}")
+    private String outputTimestamp;
+
+    @Parameter(defaultValue = "${plugin}", required = true, readonly = true)
+    private PluginDescriptor plugin;
+
+    private ToolRunner tools;
+
+    private FixCache cache;
+
+    private FixService fixService;
+
+    private BuildReport report;
+
+    private RuntimeProfile runtimeProfile;
+
+    private Long entryTime;
+
+    private SortedSet<String> profileModules;
+
+    private SortedSet<String> runtimeModules;
+
+    /**
+     * The threads deleting old images and temporary directories, joined before the build ends.
+     */
+    private List<Thread> deleting;
+
+    /**
+     * The lock of the cached runtime the image is built with, held until jpackage has copied it.
+     */
+    private FixCache.Lock runtimeLock;
+
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
         if (skip) {
@@ -119,56 +318,218 @@ public class BuildImage extends AbstractMojo {
             throw new MojoFailureException("mainClass required");
         }
 
+        if (!analyzer.equals(ANALYZER_JDEPS) && !analyzer.equals(ANALYZER_BYTECODE)) {
+            throw new MojoFailureException("unknown analyzer: " + analyzer);
+        }
+
+        if (profile != null) {
+            try {
+                runtimeProfile = RuntimeProfile.of(profile);
+            } catch (IllegalArgumentException e) {
+                throw new MojoFailureException("unknown profile: " + profile);
+            }
+            profileModules = systemModules(runtimeProfile.getAddModules());
+        }
+
+        for (MergeGroup group : mergeGroups()) {
+            try {
+                group.check();
+            } catch (IllegalArgumentException e) {
+                throw new MojoFailureException("invalid merge group " + group + ": " + e.getMessage());
+            }
+        }
+
+        if (reproducible) {
+            try {
+                entryTime = FileUtils.entryTime(outputTimestamp());
+            } catch (DateTimeParseException e) {
+                throw new MojoFailureException("invalid outputTimestamp: " + outputTimestamp);
+            }
+        }
+
+        tools = new ToolRunner(getLog(), fork);
+        fixService = FixService.of(session);
+        report = new BuildReport();
+
+        if (useCache) {
+            cache = new FixCache(cacheDirectory.toPath(), cacheSize * 1024 * 1024, plugin.getVersion(), getLog());
+        }
+
         try {
             String version = project.getArtifact().getVersion().replace("-SNAPSHOT", "");
 
             String target = project.getBuild().getDirectory();
             Path modulesDir = Path.of(target, "modules");
 
-            List<String> classpathElements = processJars(project.getRuntimeClasspathElements(), modulesDir);
+            deleting = new ArrayList<>(sweep(Path.of(target)));
+
+            List<String> runtimeClasspathElements = report.time(BuildReport.RESOLVE, null, project::getRuntimeClasspathElements);
+
+            List<String> classpathElements = processJars(runtimeClasspathElements, modulesDir);
 
-            Path appDir = Path.of(target, name + ".app");
-            if (Files.exists(appDir)) {
-                System.out.println("Deleting: " + appDir);
-                deleteDir(appDir);
+            if (!mergeGroups().isEmpty() || mergeThreshold > 0) {
+                List<String> modulePath = classpathElements;
+                classpathElements = report.time(BuildReport.MERGE, null, () -> mergeModules(Path.of(target), modulesDir, modulePath));
             }
 
-            String modulePath = join(":", classpathElements);
-            if (!jPackage(name, version, modulePath, mainClass, target)) {
-                throw new MojoExecutionException("jpackage error");
+            if (validate) {
+                List<String> modulePath = classpathElements;
+                List<String> problems = report.time(BuildReport.VALIDATE, null,
+                        () -> ModuleGraph.validate(modulePath, ModuleGraph.mainModule(mainClass)));
+                if (!problems.isEmpty()) {
+                    throw new MojoFailureException("Invalid module path:\n  " + join("\n  ", problems));
+                }
+            }
+
+            if (cache != null) {
+                cache.evict();
+            }
+
+            Path runtime = null;
+            if (cacheRuntime) {
+                try (BuildReport.Span span = report.start(BuildReport.JLINK, null)) {
+                    runtime = jLink(Path.of(target), classpathElements, span);
+                }
+            }
+
+            List<String> args;
+            boolean dumpBaseArchive = false;
+            boolean stripNativeCommands = false;
+            if (runtime != null) {
+                classpathElements = applicationModulePath(classpathElements);
+                List<String> jPackageModulePath = classpathElements;
+                if (cds) {
+                    Path packed = Path.of(target, "jpackage-app");
+                    classpathElements = packModules(packed, classpathElements);
+                    // jpackage 17 fails to copy single jars, but copies the jars of a directory
+                    jPackageModulePath = classpathElements.stream()
+                            .map(element -> Path.of(element).startsWith(packed) ? packed.toString() : element)
+                            .distinct()
+                            .collect(toList());
+                }
+                args = jPackageArgs(name, version, join(":", jPackageModulePath), mainClass);
+                args.add("--runtime-image");
+                args.add(runtime.toString());
+            } else {
+                args = jPackageArgs(name, version, join(":", classpathElements), mainClass);
+                if (runtimeProfile != null) {
+                    // without --generate-cds-archive the base archive is dumped into the runtime of the image
+                    dumpBaseArchive = runtimeProfile.isCdsArchive() && !AppCds.jlinkGeneratesArchive();
+                    List<String> options = jlinkOptions(runtimeProfile.isCdsArchive() && !dumpBaseArchive);
+                    stripNativeCommands = dumpBaseArchive && options.remove("--strip-native-commands");
+                    args.add("--jlink-options");
+                    args.add(join(" ", options));
+                    SortedSet<String> addModules = new TreeSet<>(profileModules);
+                    if (runtimeModules != null) {
+                        addModules.addAll(runtimeModules);
+                    }
+                    if (!addModules.isEmpty()) {
+                        args.add("--add-modules");
+                        args.add(join(",", addModules));
+                    }
+                }
+            }
+
+            List<String> options = new ArrayList<>(args);
+            if (cds) {
+                options.add("cds");
+                options.add(String.valueOf(cdsTrainingArgs));
+            }
+
+            boolean changed;
+            try (BuildReport.Span span = report.start(BuildReport.JPACKAGE, name)) {
+                changed = buildImage(Path.of(target), classpathElements, args, options, span);
+            }
+            releaseRuntime();
+
+            if (dumpBaseArchive && changed) {
+                Path runtimeDir = new AppImage(Path.of(target), name).getRuntimeDir();
+                boolean strip = stripNativeCommands;
+                if (!AppCds.hasBaseArchive(runtimeDir)) {
+                    report.time(BuildReport.CDS, "base", () -> AppCds.dumpBaseArchive(runtimeDir, strip, getLog()));
+                }
+            }
+
+            reportImage(new AppImage(Path.of(target), name));
+
+            if (cds) {
+                if (runtime != null) {
+                    appCds(Path.of(target), changed);
+                } else {
+                    getLog().warn("No CDS archive without the runtime linked by the plugin");
+                }
+            }
+
+            if (installerTypes != null && !installerTypes.isEmpty()) {
+                buildInstallers(Path.of(target), version);
+            }
+
+            for (Thread thread : deleting) {
+                thread.join();
             }
         } catch (IOException | DependencyResolutionRequiredException | InterruptedException e) {
             throw new MojoExecutionException(e.toString(), e);
+        } finally {
+            try {
+                releaseRuntime();
+            } catch (IOException e) {
+                getLog().warn("Cannot release runtime lock: " + e);
+            }
+            writeReport();
+        }
+    }
+
+    private void releaseRuntime() throws IOException {
+        if (runtimeLock != null) {
+            FixCache.Lock lock = runtimeLock;
+            runtimeLock = null;
+            lock.close();
         }
     }
 
+    private void writeReport() {
+        Path file = Path.of(project.getBuild().getDirectory(), "jpackage-report.json");
+        try {
+            report.write(file);
+        } catch (IOException e) {
+            getLog().warn("Cannot write " + file + ": " + e);
+            return;
+        }
+
+        printLines(getLog(), report.summary());
+        getLog().info("Report: " + file);
+    }
+
     private List<String> processJars(List<String> classpathElements, Path modulesDir) throws IOException, InterruptedException {
-        List<String> result = new ArrayList<>();
+        List<String> elements = new ArrayList<>();
+        List<String> actions = new ArrayList<>();
+        List<Path> nonModular = new ArrayList<>();
 
-        List<List<String>> lines = new ArrayList<>();
-        lines.add(Arrays.asList("classpathElements:", "modular:"));
-        for (int i = 0; i < classpathElements.size(); i++) {
-            String classpathElement = classpathElements.get(i);
+        ProjectBuildingRequest buildingRequest = new DefaultProjectBuildingRequest(session.getProjectBuildingRequest());
+        Map<Path, Path> substitutes = report.time(BuildReport.RESOLVE, "substitutions",
+                () -> new Substitutor(artifactResolver, buildingRequest, substitutions(), getLog()).resolve(project.getArtifacts(), threads));
+
+        for (String classpathElement : classpathElements) {
             Path path = Path.of(classpathElement);
             String fileName = path.getFileName().toString();
             if (!fileName.endsWith(".jar")) {
-                result.add(classpathElement);
+                elements.add(classpathElement);
+                actions.add(null);
                 continue;
             }
 
-            List<String> line = new ArrayList<>();
-            line.add(fileName);
+            String newElement = null;
+            String action = null;
 
-            String modular;
-            if (isModular(classpathElement)) {
-                result.add(classpathElement);
-                modular = "yes";
-            } else {
-                String newElement = null;
-                String action = null;
+            boolean modular = report.time(BuildReport.PROBE, fileName, () -> JarMetadata.of(path).isModular());
 
-                if (fileName.startsWith("kotlin-stdlib-")) {
-                    newElement = replaceKotlinStdLib(fileName);
+            if (modular) {
+                newElement = classpathElement;
+                action = "yes";
+            } else {
+                Path substitute = substitutes.get(path);
+                if (substitute != null) {
+                    newElement = substitute.toString();
                     action = "replaced";
                 }
 
@@ -177,192 +538,427 @@ public class BuildImage extends AbstractMojo {
                 }
 
                 if (newElement == null) {
-                    String modulePath = classpathElements.stream()
-                            .filter(p -> p.endsWith(".jar"))
-                            .filter(p -> !p.equals(path.toString()))
-                            .collect(joining(":"));
-                    newElement = fix(modulesDir, modulePath, path);
+                    nonModular.add(path);
                     action = "fixed";
                 }
+            }
 
-                if (newElement == null) {
-                    modular = "no";
-                } else if (newElement.isEmpty()) {
-                    modular = "removed";
-                } else {
-                    result.add(newElement);
-                    modular = action;
+            elements.add(newElement);
+            actions.add(action);
+        }
+
+        DependencyGraph graph;
+        Set<Path> analysed;
+        if (batchAnalysis && analyzer.equals(ANALYZER_JDEPS)) {
+            graph = new DependencyGraph();
+            analysed = jDepsBatch(modulesDir, classpathElements, nonModular);
+        } else {
+            graph = DependencyGraph.of(project);
+            analysed = emptySet();
+        }
+
+        Map<Path, String> fixed = new FixScheduler(threads).run(nonModular, graph, (jar, fixedDependencies) -> {
+            List<String> modulePath = modulePath(classpathElements, jar, fixedDependencies);
+
+            if (scopeModulePath && analyzer.equals(ANALYZER_JDEPS) && !analysed.contains(jar) && graph.contains(jar)
+                    && (cache == null || !cache.contains(cache.key(jar, modulePath, fixOptions())))) {
+                List<String> scopedModulePath = scopedModulePath(classpathElements, graph, jar, fixedDependencies);
+                String fixedJar = fix(modulesDir, scopedModulePath, jar, false);
+                if (fixedJar != null) {
+                    return fixedJar;
                 }
+                getLog().info("Fix with full module path: " + jar.getFileName());
             }
-            line.add(modular);
 
-            lines.add(line);
+            return fix(modulesDir, modulePath, jar, analysed.contains(jar));
+        });
+
+        List<String> result = new ArrayList<>();
+
+        List<List<String>> lines = new ArrayList<>();
+        lines.add(Arrays.asList("classpathElements:", "modular:"));
+        for (int i = 0; i < classpathElements.size(); i++) {
+            String classpathElement = classpathElements.get(i);
+            String newElement = elements.get(i);
+            String action = actions.get(i);
+
+            if ("fixed".equals(action)) {
+                newElement = fixed.get(Path.of(classpathElement));
+            }
+
+            if (newElement != null && !newElement.isEmpty() && !result.contains(newElement)) {
+                result.add(newElement);
+            }
+
+            if (action == null) {
+                continue;
+            }
+
+            String modular;
+            if (newElement == null) {
+                modular = "no";
+            } else if (newElement.isEmpty()) {
+                modular = "removed";
+            } else {
+                modular = action;
+            }
+
+            lines.add(Arrays.asList(Path.of(classpathElement).getFileName().toString(), modular));
+        }
+
+        printLines(getLog(), lines);
+
+        return result;
+    }
+
+    /**
+     * Merges the fixed jars of the merge groups and, with a {@code mergeThreshold}, all other small fixed jars into
+     * modules in {@code target/merged}.
+     */
+    private List<String> mergeModules(Path target, Path modulesDir, List<String> modulePath) throws IOException {
+        Map<String, Artifact> artifacts = new HashMap<>();
+        for (Artifact artifact : project.getArtifacts()) {
+            if (artifact.getFile() != null) {
+                artifacts.putIfAbsent(artifact.getFile().getName(), artifact);
+            }
+        }
+
+        Set<Path> fixed = modulePath.stream()
+                .map(Path::of)
+                .filter(element -> element.startsWith(modulesDir))
+                .collect(toCollection(LinkedHashSet::new));
+
+        Map<String, List<Path>> groups = new LinkedHashMap<>();
+        for (Path jar : fixed) {
+            Artifact artifact = artifacts.get(jar.getFileName().toString());
+            String group = null;
+            for (MergeGroup mergeGroup : mergeGroups()) {
+                if (artifact != null && mergeGroup.matches(artifact)) {
+                    group = mergeGroup.getName();
+                    break;
+                }
+            }
+            if (group == null && Files.size(jar) < mergeThreshold * 1024) {
+                group = mergedModuleName;
+            }
+            if (group != null) {
+                groups.computeIfAbsent(group, g -> new ArrayList<>()).add(jar);
+            }
         }
 
-        printLines(lines);
+        long time = entryTime != null ? entryTime : FileUtils.FIXED_TIME;
+        List<String> result = new ModuleMerger(target.resolve("merged"), time, getLog()).merge(modulePath, fixed, groups);
+
+        report.merge(modulePath.size(), result.size());
+        getLog().info("Modules: " + modulePath.size() + " before, " + result.size() + " after merging");
 
         return result;
     }
 
-    private static String fix(Path modulesDir, String modulePath, Path jar) throws IOException, InterruptedException {
+    private List<MergeGroup> mergeGroups() {
+        return mergeGroups != null ? mergeGroups : emptyList();
+    }
+
+    /**
+     * The jars of the classpath except {@code jar}, the fixed ones in place of their originals.
+     */
+    static List<String> modulePath(List<String> classpathElements, Path jar, Map<Path, String> fixedDependencies) {
+        return classpathElements.stream()
+                .filter(p -> p.endsWith(".jar"))
+                .filter(p -> !p.equals(jar.toString()))
+                .map(p -> fixedDependencies.getOrDefault(Path.of(p), p))
+                .collect(toList());
+    }
+
+    /**
+     * Like {@link #modulePath} but only with the direct and transitive Maven dependencies of {@code jar}.
+     */
+    static List<String> scopedModulePath(List<String> classpathElements, DependencyGraph graph, Path jar, Map<Path, String> fixedDependencies) {
+        Set<Path> dependencies = graph.getTransitiveDependencies(jar);
+        return classpathElements.stream()
+                .filter(p -> p.endsWith(".jar"))
+                .filter(p -> dependencies.contains(Path.of(p)))
+                .map(p -> fixedDependencies.getOrDefault(Path.of(p), p))
+                .collect(toList());
+    }
+
+    /**
+     * Fixes {@code jar} once per build: if another project of the reactor fixes the same jar with the same module path,
+     * its result is copied.
+     */
+    private String fix(Path modulesDir, List<String> modulePath, Path jar, boolean analysed) throws IOException, InterruptedException {
         String fileName = jar.getFileName().toString();
         Path target = modulesDir.resolve(fileName);
 
-        if (Files.exists(target)) {
-            System.out.println("Already Fixed: " + fileName);
-        } else try {
-            System.out.println("Fix: " + jar);
+        String key = FixCache.key(plugin.getVersion(), jar, modulePath, fixOptions());
 
-            if (!jDeps(modulesDir, modulePath, jar)) {
-                return null;
+        FixService.Fixed fixed = fixService.fix(key, () -> {
+            if (cache == null) {
+                return fixJar(modulesDir, modulePath, jar, analysed, null);
+            }
+            FixCache.Lock lock = cache.lock(key);
+            try {
+                return fixJar(modulesDir, modulePath, jar, analysed, key);
+            } finally {
+                lock.close();
             }
+        });
 
-            int splitVersion = fileName.lastIndexOf('-');
+        if (fixed == null) {
+            return null;
+        }
 
-            String moduleName = fileName.substring(0, splitVersion).replace('-', '.');
+        if (!fixed.getJar().equals(target)) {
+            try (BuildReport.Span span = report.start(BuildReport.CACHE, fileName)) {
+                FixCache.copy(fixed.getJar(), fixed.getModuleDir(), target, modulesDir);
+                span.cacheHit();
+            }
+            getLog().info("Already Fixed (Reactor): " + fileName);
+        }
 
-            Path mod = modulesDir.resolve(moduleName);
-            Path moduleInfo = mod.resolve("module-info.java");
+        return target.toString();
+    }
 
-            patch(jar, moduleInfo, target);
+    private FixService.Fixed fixJar(Path modulesDir, List<String> modulePath, Path jar, boolean analysed, String key) throws IOException, InterruptedException {
+        String fileName = jar.getFileName().toString();
+        Path target = modulesDir.resolve(fileName);
 
-/*
-                Path out = mod.resolve("classes");
+        boolean restored = false;
+        if (key != null) {
+            try (BuildReport.Span span = report.start(BuildReport.CACHE, fileName)) {
+                restored = cache.restore(key, target, modulesDir);
+                if (restored) {
+                    span.cacheHit();
+                }
+            }
+        }
 
-                extract(jar, out);
+        if (restored) {
+            getLog().info("Already Fixed: " + fileName);
+        } else if (!analyzer.equals(ANALYZER_BYTECODE) || !fixBytecode(modulesDir, modulePath, jar, target, key)) {
+            getLog().info("Fix: " + jar);
 
-                if (!javaCompiler(modulePath, moduleInfo, out)) {
-                    return null;
+            JarMetadata metadata = JarMetadata.of(jar);
+            List<Integer> releases = MultiRelease.releases(metadata);
+
+            if (!analysed) {
+                try (BuildReport.Span span = report.start(BuildReport.ANALYSE, fileName)) {
+                    span.read(jar);
+                    if (!jDeps(modulesDir, join(":", modulePath), jar, metadata, releases)) {
+                        return null;
+                    }
                 }
+            }
 
-                pack(out, target);
-*/
-        } finally {
-            System.out.println();
+            Path mod = modulesDir.resolve(metadata.getModuleName());
+
+            SortedMap<String, byte[]> descriptors = new TreeMap<>();
+            try (BuildReport.Span span = report.start(BuildReport.COMPILE, fileName)) {
+                for (int release : releases) {
+                    Path moduleInfo = MultiRelease.directory(mod, release).resolve("module-info.java");
+
+                    getLog().info("Compile (In-Memory): " + moduleInfo);
+
+                    byte[] bytes = ModuleInfo.parse(moduleInfo).toByteArray();
+                    span.read(moduleInfo).written(bytes.length);
+                    descriptors.put(MultiRelease.descriptorName(release), bytes);
+                }
+            }
+
+            Files.deleteIfExists(target);
+            patch(jar, descriptors, target);
+
+            if (key != null) {
+                cache.store(key, target, mod);
+            }
         }
 
-        return target.toString();
+        return new FixService.Fixed(target, modulesDir.resolve(JarMetadata.of(jar).getModuleName()));
     }
 
-    private static void extract(Path jar, Path out) throws IOException {
-        deleteDir(out);
-        System.out.println("Extract: " + jar);
-        JarFile jarFile = new JarFile(jar.toString());
-        Iterator<JarEntry> iterator = jarFile.entries().asIterator();
-        while (iterator.hasNext()) {
-            JarEntry entry = iterator.next();
-            String name = entry.getName();
-            Path path = out.resolve(name);
-            if (name.endsWith("/")) {
-                Files.createDirectories(path);
-            } else {
-                Files.copy(jarFile.getInputStream(entry), path);
+    /**
+     * Fixes {@code jar} with the descriptors computed by the {@link BytecodeAnalyzer}.
+     *
+     * @return {@code false} if the jar contains class files the analyzer cannot read and jdeps has to be used
+     */
+    private boolean fixBytecode(Path modulesDir, List<String> modulePath, Path jar, Path target, String key) throws IOException, InterruptedException {
+        String fileName = jar.getFileName().toString();
+
+        getLog().info("Fix (Bytecode): " + jar);
+
+        JarMetadata metadata = JarMetadata.of(jar);
+        String moduleName = metadata.getModuleName();
+        List<Integer> releases = MultiRelease.releases(metadata);
+
+        Path mod = Files.createDirectories(modulesDir.resolve(moduleName));
+
+        SortedMap<Integer, ModuleInfo> infos;
+        SortedSet<String> missingPackages;
+        try (BuildReport.Span span = report.start(BuildReport.ANALYSE, fileName)) {
+            BytecodeAnalyzer bytecodeAnalyzer = new BytecodeAnalyzer(modulePath);
+            infos = MultiRelease.run(releases, release -> bytecodeAnalyzer.analyse(jar, moduleName, release));
+            missingPackages = bytecodeAnalyzer.getMissingPackages();
+            span.read(jar);
+        } catch (BytecodeAnalyzer.UnsupportedClassException e) {
+            getLog().warn(e.getMessage() + ", analysing with jdeps");
+            return false;
+        }
+
+        if (!missingPackages.isEmpty()) {
+            getLog().warn(fileName + " references packages that are not on the module path: "
+                    + missingPackages.stream().limit(5).collect(joining(", "))
+                    + (missingPackages.size() > 5 ? " and " + (missingPackages.size() - 5) + " more" : ""));
+        }
+
+        SortedMap<String, byte[]> descriptors = new TreeMap<>();
+        try (BuildReport.Span span = report.start(BuildReport.COMPILE, fileName)) {
+            for (Entry<Integer, ModuleInfo> info : infos.entrySet()) {
+                byte[] bytes = info.getValue().toByteArray();
+                span.written(bytes.length);
+                descriptors.put(MultiRelease.descriptorName(info.getKey()), bytes);
+
+                Path dir = Files.createDirectories(MultiRelease.directory(mod, info.getKey()));
+                Files.write(dir.resolve(JarPatcher.MODULE_INFO), bytes);
             }
         }
+
+        Files.deleteIfExists(target);
+        patch(jar, descriptors, target);
+
+        if (key != null) {
+            cache.store(key, target, mod);
+        }
+
+        return true;
     }
 
-    private static void pack(Path out, Path jar) throws IOException {
-        System.out.println("Pack: " + jar);
-        try (JarOutputStream target = new JarOutputStream(new FileOutputStream(jar.toString()))) {
-            Files.walkFileTree(out, new FileVisitor<>() {
-                @Override
-                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-                    JarEntry entry = new JarEntry(out.relativize(dir).toString() + "/");
-                    target.putNextEntry(entry);
-                    target.closeEntry();
-                    return FileVisitResult.CONTINUE;
-                }
+    /**
+     * Generates the {@code module-info.java} of a jar. For a multi-release jar jdeps runs once per release, in
+     * parallel, and writes the descriptors of the versions to {@code versions/N} in the module directory.
+     */
+    private boolean jDeps(Path modulesDir, String modulePath, Path path, JarMetadata metadata, List<Integer> releases) throws IOException, InterruptedException {
+        if (!metadata.isMultiRelease()) {
+            return jDeps(modulesDir, modulePath, path, null);
+        }
 
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                    JarEntry entry = new JarEntry(out.relativize(file).toString());
-                    target.putNextEntry(entry);
-                    Files.copy(file, target);
-                    target.closeEntry();
-                    return FileVisitResult.CONTINUE;
-                }
+        Map<Integer, Boolean> results = MultiRelease.run(releases, release ->
+                jDeps(modulesDir, modulePath, path, release > MultiRelease.BASE ? Integer.toString(release) : "base"));
+        if (results.containsValue(false)) {
+            return false;
+        }
 
-                @Override
-                public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
-                    return FileVisitResult.CONTINUE;
-                }
+        // jdeps writes the descriptor of the base classes to versions/<base release>
+        Path mod = modulesDir.resolve(metadata.getModuleName());
+        Path base = mod.resolve("versions").resolve(Integer.toString(MultiRelease.BASE));
+        Files.move(base.resolve("module-info.java"), mod.resolve("module-info.java"), StandardCopyOption.REPLACE_EXISTING);
+        FileUtils.deleteDir(base);
+        return true;
+    }
 
-                @Override
-                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-                    return FileVisitResult.CONTINUE;
-                }
-            });
+    private boolean jDeps(Path modulesDir, String modulePath, Path path, String multiRelease) throws IOException, InterruptedException {
+        List<String> args = new ArrayList<>();
+        if (multiRelease != null) {
+            args.add("--multi-release");
+            args.add(multiRelease);
         }
+        args.add("--generate-module-info");
+        args.add(modulesDir.toString());
+        if (!modulePath.isEmpty()) {
+            args.add("--module-path");
+            args.add(modulePath);
+        }
+        args.add(path.toString());
+
+        return tools.run("jdeps", args.toArray(String[]::new));
     }
 
-    private static boolean jDeps(Path modulesDir, String modulePath, Path path) throws IOException, InterruptedException {
-        Path jDepsBinary = JAVA_HOME.resolve("bin/jdeps");
+    private List<Substitution> substitutions() {
+        if (substitutions == null) {
+            return List.of(new Substitution("org.jetbrains.kotlin", "kotlin-stdlib*", "modular"));
+        }
+        return substitutions;
+    }
 
-//        List<String> versions = getVersions(path.toString());
+    /**
+     * Everything besides the jar and its module path that the result of a fix depends on, including the release the
+     * versioned descriptors of multi-release jars are computed for.
+     */
+    private String[] fixOptions() {
+        String release = Integer.toString(Runtime.version().feature());
+        if (entryTime == null) {
+            return new String[] { analyzer, release };
+        }
+        return new String[] { analyzer, release, "reproducible", entryTime.toString() };
+    }
 
-//        if (versions.isEmpty()) {
-        String[] cmdArray = {
-                jDepsBinary.toString(),
-                "--generate-module-info", modulesDir.toString(),
-                "--module-path", modulePath,
-                path.toString(),
-        };
-
-        return exec(cmdArray);
-//        } else for (String version : versions) {
-//            String[] cmdArray = {
-//                    jDepsBinary.toString(),
-//                    "--multi-release", version,
-//                    "--generate-module-info", modulesDir.toString(),
-//                    "--module-path", modulePath,
-//                    path.toString(),
-//            };
-//
-//            exec(cmdArray);
-//        }
-    }
-
-    private String replaceKotlinStdLib(String fileName) {
-        String element;
-        ProjectBuildingRequest buildingRequest = new DefaultProjectBuildingRequest(session.getProjectBuildingRequest());
-        DefaultArtifactCoordinate artifactCoordinate = toArtifactCoordinate(fileName);
-        artifactCoordinate.setClassifier("modular");
-        try {
-            ArtifactResult artifactResult = artifactResolver.resolveArtifact(buildingRequest, artifactCoordinate);
-            element = artifactResult.getArtifact().getFile().toString();
-        } catch (ArtifactResolverException | IllegalArgumentException e) {
-            element = null;
+    /**
+     * The {@code outputTimestamp} in milliseconds, parsed like the Maven archiver does.
+     */
+    private long outputTimestamp() {
+        if (outputTimestamp == null || outputTimestamp.length() < 2) {
+            return 0;
         }
-        return element;
+        if (outputTimestamp.chars().allMatch(Character::isDigit)) {
+            return Long.parseLong(outputTimestamp) * 1000;
+        }
+        return OffsetDateTime.parse(outputTimestamp).toInstant().toEpochMilli();
     }
 
-    private static void deleteDir(Path dir) throws IOException {
-        Files.walkFileTree(dir, new FileVisitor<>() {
-            @Override
-            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-                return FileVisitResult.CONTINUE;
+    /**
+     * Generates the module descriptors of all jars that are not cached yet and not multi-release with a single jdeps
+     * run.
+     *
+     * @return the jars that were analysed successfully
+     */
+    private Set<Path> jDepsBatch(Path modulesDir, List<String> classpathElements, List<Path> jars) throws IOException, InterruptedException {
+        Set<Path> pending = new LinkedHashSet<>();
+        for (Path jar : jars) {
+            if (JarMetadata.of(jar).isMultiRelease()) {
+                // analysed per release
+                continue;
             }
-
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                Files.delete(file);
-                return FileVisitResult.CONTINUE;
+            if (cache == null || !cache.contains(cache.key(jar, modulePath(classpathElements, jar, emptyMap()), fixOptions()))) {
+                pending.add(jar);
             }
+        }
 
-            @Override
-            public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
-                return FileVisitResult.CONTINUE;
-            }
+        if (pending.isEmpty()) {
+            return pending;
+        }
+
+        getLog().info("Analyse: " + pending.size() + " jars");
+
+        List<String> args = new ArrayList<>();
+        args.add("--generate-module-info");
+        args.add(modulesDir.toString());
 
-            @Override
-            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-                Files.delete(dir);
-                return FileVisitResult.CONTINUE;
+        String modulePath = classpathElements.stream()
+                .filter(p -> p.endsWith(".jar"))
+                .filter(p -> !pending.contains(Path.of(p)))
+                .collect(joining(":"));
+        if (!modulePath.isEmpty()) {
+            args.add("--module-path");
+            args.add(modulePath);
+        }
+
+        for (Path jar : pending) {
+            args.add(jar.toString());
+        }
+
+        try (BuildReport.Span span = report.start(BuildReport.ANALYSE, null)) {
+            for (Path jar : pending) {
+                span.read(jar);
             }
-        });
+            if (!tools.run("jdeps", args.toArray(String[]::new))) {
+                getLog().warn("Batch analysis failed, analysing jars one by one");
+                return emptySet();
+            }
+        }
+
+        return pending;
     }
 
-    private static void printLines(List<List<String>> lines) {
+    static void printLines(Log log, List<List<String>> lines) {
         Map<Integer, Integer> cols = lines.stream()
                 .flatMap(line -> IntStream.range(0, line.size()).boxed()
                         .collect(toMap(
@@ -387,172 +983,557 @@ public class BuildImage extends AbstractMojo {
                 sb.append(str);
                 sb.append(" ".repeat(cols.get(i) - str.length()));
             }
-            System.out.println(sb);
+            log.info(sb);
         }
     }
 
-    private static boolean jPackage(String name, String version, String modulePath, String mainClass, String target) throws IOException, InterruptedException {
-        Path jPackageBinary = JAVA_HOME.resolve("bin/jpackage");
+    /**
+     * Links all modules the main module needs except the modules of the project itself into a runtime image.
+     *
+     * @return the runtime image or {@code null} if jpackage should link the runtime itself
+     */
+    private Path jLink(Path target, List<String> modulePath, BuildReport.Span span) throws IOException, InterruptedException {
+        Set<String> applicationModules = ModuleFinder.of(applicationModulePath(modulePath).stream().map(Path::of).toArray(Path[]::new))
+                .findAll().stream()
+                .map(reference -> reference.descriptor().name())
+                .collect(toSet());
+
+        ModuleGraph graph;
+        try {
+            graph = ModuleGraph.resolve(modulePath, Set.of(ModuleGraph.mainModule(mainClass)));
+        } catch (FindException | ResolutionException e) {
+            getLog().warn("Runtime is linked by jpackage: " + e.getMessage());
+            return null;
+        }
 
-        String[] cmdArray = {
-                jPackageBinary.toString(),
-                "--type", "app-image",
-                "--name", name,
-                "--app-version", version,
-                "--module-path", modulePath,
-                "--module", mainClass,
-                "--dest", target,
-//                "--verbose",
-        };
+        SortedMap<String, ResolvedModule> modules = new TreeMap<>();
+        for (ResolvedModule module : graph.getModules()) {
+            if (!applicationModules.contains(module.name())) {
+                modules.put(module.name(), module);
+            }
+        }
+        SortedSet<String> addModules = new TreeSet<>(modules.keySet());
+        if (runtimeProfile != null) {
+            addModules.addAll(profileModules);
+        }
 
-        System.out.println(String.join(" ", cmdArray));
+        boolean baseArchive = cds || runtimeProfile != null && runtimeProfile.isCdsArchive();
+        boolean dumpBaseArchive = baseArchive && !AppCds.jlinkGeneratesArchive();
+        List<String> options = jlinkOptions(baseArchive && !dumpBaseArchive);
+        boolean stripNativeCommands = dumpBaseArchive && options.remove("--strip-native-commands");
+
+        ContentHash hash = new ContentHash()
+                .add(plugin.getVersion())
+                .add(System.getProperty("java.home"))
+                .add(Runtime.version().toString())
+                .add(join(" ", options))
+                .add(dumpBaseArchive ? "cds" : "")
+                .add(join(",", addModules));
+
+        List<String> jlinkModulePath = new ArrayList<>();
+        for (ResolvedModule module : modules.values()) {
+            if (module.reference().descriptor().isAutomatic()) {
+                getLog().warn("Runtime is linked by jpackage: automatic module " + module.name());
+                return null;
+            }
 
-        return exec(cmdArray);
-    }
+            hash.add(module.name());
 
-    private static boolean javaCompiler(String modulePath, Path moduleInfo, Path out) throws IOException, InterruptedException {
-        System.out.println("Compile: " + moduleInfo);
+            Optional<Path> location = ModuleGraph.location(module);
+            if (location.isPresent()) {
+                if (Files.isDirectory(location.get())) {
+                    getLog().warn("Runtime is linked by jpackage: exploded module " + module.name());
+                    return null;
+                }
+                hash.addFile(location.get());
+                jlinkModulePath.add(location.get().toString());
+            }
+        }
+        runtimeModules = new TreeSet<>(modules.keySet());
 
-        Path javaCompilerBinary = JAVA_HOME.resolve("bin/javac");
+        String key = hash.get();
 
-        String[] cmdArray = {
-                javaCompilerBinary.toString(),
-                "--module-path", modulePath,
-                "-d", out.toString(),
-                moduleInfo.toString(),
-        };
+        Path runtimes = target.resolve("runtimes");
+        if (cache != null) {
+            runtimeLock = cache.lock(key);
+        }
+        Path runtime = cache != null ? cache.runtime(key) : runtimes.resolve(key);
+        if (runtime != null && Files.isDirectory(runtime)) {
+            getLog().info("Runtime up-to-date: " + runtime);
+            span.cacheHit();
+            return runtime;
+        }
 
-        return exec(cmdArray);
-    }
+        Path tmp = cache != null ? cache.createTempDirectory() : Files.createTempDirectory(target, TEMP_PREFIX);
+        try {
+            Path output = tmp.resolve("runtime");
 
-    private static void patch(Path inputJar, Path moduleInfo, Path outputJar) {
-        System.out.println("Compile (In-Memory): " + moduleInfo);
+            List<String> args = new ArrayList<>();
+            if (!jlinkModulePath.isEmpty()) {
+                args.add("--module-path");
+                args.add(join(":", jlinkModulePath));
+            }
+            args.add("--add-modules");
+            args.add(join(",", addModules));
+            args.add("--output");
+            args.add(output.toString());
+            args.addAll(options);
 
-        try {
-            CompilationUnit compilationUnit = StaticJavaParser.parse(moduleInfo);
+            getLog().info("jlink " + join(" ", args));
 
-            ModuleDeclaration module = compilationUnit.getModule().get();
+            if (!tools.run("jlink", args.toArray(String[]::new))) {
+                getLog().warn("Runtime is linked by jpackage: jlink error");
+                return null;
+            }
 
-            ClassWriter classWriter = new ClassWriter(0);
-            classWriter.visit(V9, ACC_MODULE, "module-info", null, null, null);
+            if (dumpBaseArchive && !AppCds.dumpBaseArchive(output, stripNativeCommands, getLog())) {
+                return null;
+            }
 
-            ModuleVisitor mv = classWriter.visitModule(module.getNameAsString(), ACC_SYNTHETIC, null);
+            span.written(output);
 
-            for (ModuleRequiresDirective requires : module.findAll(ModuleRequiresDirective.class)) {
-                mv.visitRequire(
-                        requires.getName().asString(),
-                        0,
-                        null
-               );
+            if (cache != null) {
+                return cache.storeRuntime(key, output);
             }
 
-            for (ModuleExportsDirective export : module.findAll(ModuleExportsDirective.class)) {
-                mv.visitExport(
-                        export.getNameAsString().replace('.', '/'),
-                        0,
-                        export.getModuleNames()
-                                .stream()
-                                .map(Name::toString)
-                                .toArray(String[]::new)
-               );
+            if (Files.isDirectory(runtimes)) {
+                FileUtils.deleteDir(runtimes);
             }
+            Files.createDirectories(runtimes);
+            Files.move(output, runtimes.resolve(key), StandardCopyOption.ATOMIC_MOVE);
+            return runtimes.resolve(key);
+        } finally {
+            FileUtils.deleteDir(tmp);
+        }
+    }
 
-            mv.visitRequire("java.base", ACC_MANDATED, null);
-            mv.visitEnd();
+    /**
+     * @return the modules that are part of the running JDK
+     */
+    private SortedSet<String> systemModules(List<String> modules) {
+        ModuleFinder system = ModuleFinder.ofSystem();
+        SortedSet<String> systemModules = new TreeSet<>();
+        for (String module : modules) {
+            if (system.find(module).isPresent()) {
+                systemModules.add(module);
+            } else {
+                getLog().warn("Module not in JDK: " + module);
+            }
+        }
+        return systemModules;
+    }
 
-            classWriter.visitEnd();
+    /**
+     * The jlink options of the profile or the configured ones.
+     *
+     * @param generateCdsArchive add {@code --generate-cds-archive}
+     */
+    private List<String> jlinkOptions(boolean generateCdsArchive) {
+        List<String> options = runtimeProfile != null
+                ? new ArrayList<>(runtimeProfile.getJlinkOptions())
+                : splitOptions(jlinkOptions);
+        if (generateCdsArchive) {
+            options.add("--generate-cds-archive");
+        }
+        return options;
+    }
 
-            byte[] bytes = classWriter.toByteArray();
+    /**
+     * Logs and reports the size of the image, the modules of its runtime, as listed in its {@code release} file, and
+     * whether the runtime has a CDS archive.
+     */
+    private void reportImage(AppImage image) throws IOException {
+        Path release = image.getRuntimeDir().resolve("release");
+        if (!Files.exists(release)) {
+            return;
+        }
 
+        Properties properties = new Properties();
+        try (Reader in = Files.newBufferedReader(release, StandardCharsets.UTF_8)) {
+            properties.load(in);
+        }
+        String value = properties.getProperty("MODULES", "").replace("\"", "");
+        List<String> modules = splitOptions(value);
+
+        long imageBytes = FileUtils.size(image.getPath());
+        long runtimeBytes = FileUtils.size(image.getRuntimeDir());
+        boolean baseArchive = AppCds.hasBaseArchive(image.getRuntimeDir());
+        String profileName = runtimeProfile != null ? runtimeProfile.toString() : null;
+        report.image(profileName, imageBytes, runtimeBytes, modules, baseArchive);
+
+        getLog().info(String.format("Image%s: %d kB, runtime %d kB, %d modules%s",
+                profileName != null ? " (" + profileName + ")" : "",
+                imageBytes / 1024, runtimeBytes / 1024, modules.size(), baseArchive ? ", CDS archive" : ""));
+        getLog().info("Modules: " + join(" ", modules));
+
+        if (runtimeProfile != null && runtimeProfile.isCdsArchive() && !baseArchive) {
+            getLog().warn("Runtime of profile " + profileName + " has no CDS archive");
+        }
+    }
 
-            try (JarOutputStream targetStream = new JarOutputStream(new FileOutputStream(outputJar.toString()))) {
-                {
-                    JarEntry entry = new JarEntry("module-info.class");
-                    targetStream.putNextEntry(entry);
-                    targetStream.write(bytes);
-                    targetStream.closeEntry();
-                }
+    /**
+     * The module path elements of the project itself, i.e. everything that is not a jar.
+     */
+    private static List<String> applicationModulePath(List<String> modulePath) {
+        return modulePath.stream()
+                .filter(element -> !element.endsWith(".jar"))
+                .filter(element -> Files.exists(Path.of(element)))
+                .collect(toList());
+    }
 
-                JarFile jarFile = new JarFile(inputJar.toString());
-                Iterator<JarEntry> iterator = jarFile.entries().asIterator();
-                while (iterator.hasNext()) {
-                    JarEntry entry = iterator.next();
-                    String name = entry.getName();
+    /**
+     * Replaces exploded modules by jars, CDS does not support directories on the module path. A jar is only rewritten
+     * if its content changes.
+     */
+    private static List<String> packModules(Path dir, List<String> modulePath) throws IOException {
+        Files.createDirectories(dir);
 
-                    if (name.endsWith("/")) {
-                        targetStream.putNextEntry(entry);
-                        targetStream.closeEntry();
-                    } else {
-                        targetStream.putNextEntry(entry);
+        List<String> result = new ArrayList<>();
+        for (String element : modulePath) {
+            Path path = Path.of(element);
+            Set<ModuleReference> modules = ModuleFinder.of(path).findAll();
+            if (!Files.isDirectory(path) || modules.size() != 1) {
+                result.add(element);
+                continue;
+            }
 
-                        try (InputStream stream = jarFile.getInputStream(entry)) {
-                            stream.transferTo(targetStream);
-                        }
+            Path jar = dir.resolve(modules.iterator().next().descriptor().name() + ".jar");
+            Path tmp = dir.resolve(TEMP_PREFIX + jar.getFileName());
+            try {
+                FileUtils.jar(path, tmp);
+                if (!Files.exists(jar) || Files.mismatch(tmp, jar) >= 0) {
+                    Files.move(tmp, jar, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
 
-                        targetStream.closeEntry();
-                    }
+            result.add(jar.toString());
+        }
+
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!result.contains(file.toString())) {
+                    Files.delete(file);
                 }
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates the app-image in a temporary directory and swaps it with the existing one, unless the fingerprint of
+     * all inputs shows that the image is up-to-date or that only modules changed that can be replaced in place.
+     *
+     * @param options everything besides the module path and the jpackage arguments the image depends on
+     * @return {@code false} if the image was up-to-date
+     */
+    private boolean buildImage(Path target, List<String> modulePath, List<String> args, List<String> options, BuildReport.Span span) throws IOException, InterruptedException, MojoExecutionException {
+        AppImage image = new AppImage(target, name);
+        Path fingerprintFile = target.resolve(name + ".fingerprint");
+
+        Fingerprint fingerprint = Fingerprint.of(modulePath, options);
+        Fingerprint previous = incremental && Files.exists(image.getPath()) ? Fingerprint.load(fingerprintFile) : null;
+        Set<String> changed = fingerprint.changedElements(previous);
+
+        if (changed != null && changed.isEmpty()) {
+            getLog().info("Image up-to-date: " + image.getPath());
+            span.cacheHit();
+            return false;
+        }
+
+        if (changed != null && replaceModules(image, modulePath, changed)) {
+            fingerprint.store(fingerprintFile);
+            return true;
+        }
+
+        Files.deleteIfExists(fingerprintFile);
+
+        Path dest = Files.createTempDirectory(target, TEMP_PREFIX);
+        try {
+            if (!jPackage(args, dest)) {
+                throw new MojoExecutionException("jpackage error");
+            }
+
+            Path newImage = new AppImage(dest, name).getPath();
+            span.written(newImage);
+            swap(newImage, image.getPath());
+        } finally {
+            FileUtils.deleteDir(dest);
+        }
+
+        fingerprint.store(fingerprintFile);
+        return true;
+    }
+
+    /**
+     * Records the CDS archive of a changed image and measures the startup time with and without it.
+     */
+    private void appCds(Path target, boolean changed) throws IOException, InterruptedException {
+        List<String> trainingArgs = cdsTrainingArgs != null ? splitOptions(cdsTrainingArgs) : emptyList();
+        AppCds appCds = new AppCds(getLog(), new AppImage(target, name), trainingArgs, cdsTimeout);
+
+        if (!changed && Files.exists(appCds.getArchive())) {
+            getLog().info("CDS archive up-to-date: " + appCds.getArchive());
+            return;
+        }
+
+        appCds.disable();
+
+        long baseline = -1;
+        if (cdsRuns > 0) {
+            baseline = report.time(BuildReport.CDS, "baseline", () -> appCds.measure(cdsRuns));
+        }
+
+        getLog().info("Training: " + name + " " + join(" ", trainingArgs));
+        try (BuildReport.Span span = report.start(BuildReport.CDS, "train")) {
+            if (!appCds.train(target.resolve(name + "-cds.log"))) {
+                return;
+            }
+            span.written(appCds.getArchive());
+        }
+
+        if (cdsRuns > 0) {
+            long archived = report.time(BuildReport.CDS, "archived", () -> appCds.measure(cdsRuns));
+            getLog().info("Startup: " + baseline + " ms without, " + archived + " ms with CDS archive (mean of " + cdsRuns + " runs)");
         }
     }
 
-    private static boolean exec(String[] cmdArray) throws IOException, InterruptedException {
-        Process process = new ProcessBuilder(cmdArray).inheritIO().start();
-                // Runtime.getRuntime().exec(cmdArray);
+    private static List<String> splitOptions(String options) {
+        List<String> result = new ArrayList<>();
+        for (String option : options.trim().split("\\s+")) {
+            if (!option.isEmpty()) {
+                result.add(option);
+            }
+        }
+        return result;
+    }
 
-        try (Scanner sc = new Scanner(process.getInputStream())) {
-            while (sc.hasNextLine()) {
-                String line = sc.nextLine();
-                System.out.println(line);
+    /**
+     * Copies the changed modules into the {@code mods} directory of the image, which is only possible if all of them
+     * are found there and not linked into the runtime. jpackage copies jars as they are and the content of an
+     * exploded module directly into {@code mods}, so at most one exploded module can be replaced.
+     */
+    boolean replaceModules(AppImage image, List<String> modulePath, Set<String> changed) throws IOException {
+        Path modsDir = image.getModsDir();
+
+        long exploded = modulePath.stream()
+                .filter(element -> Files.isDirectory(Path.of(element)))
+                .count();
+
+        for (String element : changed) {
+            Path source = Path.of(element);
+            Path installed = Files.isDirectory(source)
+                    ? modsDir.resolve(JarPatcher.MODULE_INFO)
+                    : modsDir.resolve(source.getFileName());
+
+            if (!Files.exists(installed) || (Files.isDirectory(source) && exploded > 1)) {
+                return false;
             }
         }
 
-        if (process.waitFor() != 0) {
-            try (Scanner sc = new Scanner(process.getErrorStream())) {
-                while (sc.hasNextLine()) {
-                    String line = sc.nextLine();
-                    System.out.println(line);
+        for (String element : changed) {
+            Path source = Path.of(element);
+
+            getLog().info("Replace: " + source.getFileName());
+
+            if (Files.isDirectory(source)) {
+                try (Stream<Path> files = Files.list(modsDir)) {
+                    for (Path file : (Iterable<Path>) files::iterator) {
+                        if (!file.getFileName().toString().endsWith(".jar")) {
+                            if (Files.isDirectory(file)) {
+                                FileUtils.deleteDir(file);
+                            } else {
+                                Files.delete(file);
+                            }
+                        }
+                    }
                 }
+                FileUtils.copyDir(source, modsDir);
+            } else {
+                Files.copy(source, modsDir.resolve(source.getFileName()), StandardCopyOption.REPLACE_EXISTING);
             }
-            return false;
         }
 
         return true;
     }
 
-    private DefaultArtifactCoordinate toArtifactCoordinate(String fileName) {
-        DefaultArtifactCoordinate artifactCoordinate = new DefaultArtifactCoordinate();
+    /**
+     * Moves the new image into place. The old one is renamed and deleted concurrently to the rest of the build, if
+     * that is cut short the {@link #sweep} of the next build deletes it.
+     */
+    private void swap(Path newImage, Path image) throws IOException {
+        Path old = null;
+        if (Files.exists(image)) {
+            old = image.resolveSibling(OLD_PREFIX + image.getFileName() + "-" + System.currentTimeMillis());
+            Files.move(image, old, StandardCopyOption.ATOMIC_MOVE);
+        }
 
-        int splitVersion = fileName.lastIndexOf('-');
-        int splitExtension = fileName.lastIndexOf('.');
+        try {
+            Files.move(newImage, image, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (old != null) {
+                Files.move(old, image, StandardCopyOption.ATOMIC_MOVE);
+            }
+            throw e;
+        }
 
-        artifactCoordinate.setGroupId("org.jetbrains.kotlin");
-        artifactCoordinate.setArtifactId(fileName.substring(0, splitVersion));
-        artifactCoordinate.setVersion(fileName.substring(splitVersion + 1, splitExtension));
-        artifactCoordinate.setExtension(fileName.substring(splitExtension + 1));
+        if (old != null) {
+            deleting.add(FileUtils.deleteDirInBackground(old));
+        }
+    }
+
+    /**
+     * Starts deleting the old images and temporary directories left behind by earlier builds.
+     */
+    private List<Thread> sweep(Path target) throws IOException {
+        if (!Files.isDirectory(target)) {
+            return emptyList();
+        }
 
-        return artifactCoordinate;
+        try (Stream<Path> files = Files.list(target)) {
+            return files
+                    .filter(file -> {
+                        String fileName = file.getFileName().toString();
+                        return fileName.startsWith(OLD_PREFIX) || fileName.startsWith(TEMP_PREFIX);
+                    })
+                    .map(FileUtils::deleteDirInBackground)
+                    .collect(toList());
+        }
     }
 
-    private static boolean isModular(String jar) throws IOException {
-        return new JarFile(jar).stream()
-                .anyMatch(jarEntry -> jarEntry.getName().equals("module-info.class"));
+    private static List<String> jPackageArgs(String name, String version, String modulePath, String mainClass) {
+        return new ArrayList<>(Arrays.asList(
+                "--type", "app-image",
+                "--name", name,
+                "--app-version", version,
+                "--module-path", modulePath,
+                "--module", mainClass
+//                "--verbose",
+        ));
     }
 
-    private static List<String> getVersions(String jar) throws IOException {
-        JarFile jarFile = new JarFile(jar);
+    /**
+     * Builds all installer types from the app-image in parallel. jpackage runs as separate process, as multiple
+     * jpackage runs in one JVM do not work.
+     */
+    private void buildInstallers(Path target, String version) throws IOException, InterruptedException, MojoExecutionException {
+        AppImage image = new AppImage(target, name);
+        String imageHash = Fingerprint.of(List.of(image.getPath().toString()), emptyList()).get();
 
-        Manifest manifest = jarFile.getManifest();
-        System.out.println("manifest = " + manifest.getMainAttributes().keySet());
+        ToolRunner forked = new ToolRunner(getLog(), true);
+        Map<String, Future<Boolean>> futures = new LinkedHashMap<>();
 
-        String prefixVersions = "META-INF/versions/";
-        return jarFile.stream()
-                .map(ZipEntry::toString)
-                .filter(s -> s.startsWith(prefixVersions))
-                .map(s -> s.substring(prefixVersions.length()))
-                .collect(toList());
+        int poolSize = Math.min(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(), installerTypes.size());
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        try {
+            for (String type : installerTypes) {
+                futures.put(type, executor.submit(() -> buildInstaller(forked, target, image, imageHash, version, type.trim())));
+            }
+
+            List<String> failed = new ArrayList<>();
+            for (Entry<String, Future<Boolean>> future : futures.entrySet()) {
+                if (!future.getValue().get()) {
+                    failed.add(future.getKey());
+                }
+            }
+            if (!failed.isEmpty()) {
+                throw new MojoExecutionException("installer error: " + join(", ", failed));
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new MojoExecutionException(e.getCause().toString(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Builds one installer type into {@code target/installers/<type>}, unless its fingerprint, made of the content of
+     * the app-image and the options, did not change.
+     *
+     * @return {@code false} if jpackage failed
+     */
+    private boolean buildInstaller(ToolRunner runner, Path target, AppImage image, String imageHash, String version, String type) throws IOException, InterruptedException {
+        Path installers = Files.createDirectories(target.resolve("installers"));
+        Path dest = installers.resolve(type);
+        Path fingerprintFile = installers.resolve(type + ".fingerprint");
+
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "--type", type,
+                "--app-image", image.getPath().toString(),
+                "--name", name,
+                "--app-version", version
+        ));
+        if (installerOptions != null) {
+            args.addAll(splitOptions(installerOptions));
+        }
+
+        try (BuildReport.Span span = report.start(BuildReport.INSTALLER, type)) {
+            List<String> options = new ArrayList<>(args);
+            options.add(imageHash);
+            Fingerprint fingerprint = Fingerprint.of(emptyList(), options);
+            Fingerprint previous = Files.isDirectory(dest) ? Fingerprint.load(fingerprintFile) : null;
+            Set<String> changed = fingerprint.changedElements(previous);
+            if (changed != null && changed.isEmpty()) {
+                getLog().info("Installer up-to-date: " + type);
+                span.cacheHit();
+                return true;
+            }
+
+            Files.deleteIfExists(fingerprintFile);
+
+            Path tmp = Files.createTempDirectory(target, TEMP_PREFIX);
+            try {
+                args.add("--dest");
+                args.add(tmp.toString());
+                getLog().info("jpackage " + join(" ", args));
+                if (!runner.run("jpackage", args.toArray(String[]::new))) {
+                    return false;
+                }
+                span.written(tmp);
+
+                if (Files.exists(dest)) {
+                    FileUtils.deleteDir(dest);
+                }
+                Files.move(tmp, dest, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                if (Files.exists(tmp)) {
+                    FileUtils.deleteDir(tmp);
+                }
+            }
+
+            fingerprint.store(fingerprintFile);
+        }
+
+        try (Stream<Path> files = Files.list(dest)) {
+            files.forEach(file -> getLog().info("Installer: " + file));
+        }
+        return true;
+    }
+
+    private boolean jPackage(List<String> options, Path dest) throws IOException, InterruptedException {
+        List<String> args = new ArrayList<>(options);
+        args.add("--dest");
+        args.add(dest.toString());
+
+        getLog().info("jpackage " + String.join(" ", args));
+
+        return tools.run("jpackage", args.toArray(String[]::new));
+    }
+
+    private void patch(Path inputJar, SortedMap<String, byte[]> descriptors, Path outputJar) throws IOException {
+        try (BuildReport.Span span = report.start(BuildReport.PATCH, inputJar.getFileName().toString())) {
+            if (entryTime != null) {
+                JarPatcher.patchReproducible(inputJar, descriptors, outputJar, entryTime);
+            } else {
+                JarPatcher.patch(inputJar, descriptors, outputJar);
+            }
+            span.read(inputJar).written(outputJar);
+        }
     }
 
 }
@@ -0,0 +1,387 @@
+package de.fluxparticle.jpackage;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class BuildReport {
+
+    static final String RESOLVE = "resolve";
+
+    static final String PROBE = "probe";
+
+    static final String ANALYSE = "analyse";
+
+    static final String COMPILE = "compile";
+
+    static final String PATCH = "patch";
+
+    static final String MERGE = "merge";
+
+    static final String VALIDATE = "validate";
+
+    static final String CACHE = "cache";
+
+    static final String JLINK = "jlink";
+
+    static final String JPACKAGE = "jpackage";
+
+    static final String CDS = "cds";
+
+    static final String INSTALLER = "installer";
+
+    private final long start = System.nanoTime();
+
+    private final ConcurrentLinkedQueue<Span> records = new ConcurrentLinkedQueue<>();
+
+    private String profile;
+
+    private long imageBytes = -1;
+
+    private long runtimeBytes = -1;
+
+    private List<String> modules;
+
+    private boolean cdsArchive;
+
+    private int modulesBeforeMerge = -1;
+
+    private int modulesAfterMerge = -1;
+
+    /**
+     * Starts measuring a phase, optionally for a single jar. The returned span is thread confined and recorded when
+     * it is closed.
+     */
+    Span start(String phase, String subject) {
+        return new Span(phase, subject);
+    }
+
+    /**
+     * Runs {@code task} in a span of {@code phase}, for work that records nothing but its time.
+     */
+    <T, E extends Exception> T time(String phase, String subject, Task<T, E> task) throws E, InterruptedException {
+        Span span = start(phase, subject);
+        try {
+            return task.run();
+        } finally {
+            span.close();
+        }
+    }
+
+    /**
+     * Records size and modules of the built image.
+     *
+     * @param cdsArchive the runtime has a CDS archive of its classes
+     */
+    void image(String profile, long imageBytes, long runtimeBytes, List<String> modules, boolean cdsArchive) {
+        this.profile = profile;
+        this.imageBytes = imageBytes;
+        this.runtimeBytes = runtimeBytes;
+        this.modules = modules;
+        this.cdsArchive = cdsArchive;
+    }
+
+    /**
+     * Records the number of modules on the module path before and after merging.
+     */
+    void merge(int modulesBefore, int modulesAfter) {
+        this.modulesBeforeMerge = modulesBefore;
+        this.modulesAfterMerge = modulesAfter;
+    }
+
+    /**
+     * Writes all spans and the totals per phase as JSON.
+     */
+    void write(Path file) throws IOException {
+        long end = System.nanoTime();
+        List<Span> spans = spans();
+
+        Files.createDirectories(file.getParent());
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("{\n");
+            out.write("  \"wallMillis\": " + millis(end - start) + ",\n");
+
+            if (modules != null) {
+                out.write("  \"image\": {\"profile\": " + quote(profile)
+                        + ", \"bytes\": " + imageBytes
+                        + ", \"runtimeBytes\": " + runtimeBytes
+                        + ", \"cdsArchive\": " + cdsArchive
+                        + ", \"modules\": [" + modules.stream().map(BuildReport::quote).collect(joining(", ")) + "]"
+                        + "},\n");
+            }
+
+            if (modulesBeforeMerge >= 0) {
+                out.write("  \"merge\": {\"modulesBefore\": " + modulesBeforeMerge
+                        + ", \"modulesAfter\": " + modulesAfterMerge
+                        + "},\n");
+            }
+
+            out.write("  \"phases\": [");
+            String delimiter = "\n";
+            for (Phase phase : phases(spans)) {
+                out.write(delimiter); delimiter = ",\n";
+                out.write("    {\"phase\": " + quote(phase.name)
+                        + ", \"count\": " + phase.count
+                        + ", \"wallMillis\": " + millis(phase.end - phase.start)
+                        + ", \"totalMillis\": " + millis(phase.total)
+                        + ", \"bytesRead\": " + phase.bytesRead
+                        + ", \"bytesWritten\": " + phase.bytesWritten
+                        + ", \"cacheHits\": " + phase.cacheHits
+                        + "}");
+            }
+            out.write("\n  ],\n");
+
+            out.write("  \"spans\": [");
+            delimiter = "\n";
+            for (Span span : spans) {
+                out.write(delimiter); delimiter = ",\n";
+                out.write("    {\"phase\": " + quote(span.phase)
+                        + ", \"subject\": " + quote(span.subject)
+                        + ", \"thread\": " + quote(span.thread)
+                        + ", \"startMillis\": " + millis(span.start - start)
+                        + ", \"millis\": " + millis(span.end - span.start)
+                        + ", \"bytesRead\": " + span.bytesRead
+                        + ", \"bytesWritten\": " + span.bytesWritten
+                        + ", \"cacheHit\": " + span.cacheHit
+                        + "}");
+            }
+            out.write("\n  ]\n");
+            out.write("}\n");
+        }
+    }
+
+    /**
+     * The totals per phase as table lines for the log.
+     */
+    List<List<String>> summary() {
+        List<List<String>> lines = new ArrayList<>();
+        lines.add(Arrays.asList("phase:", "count:", "wall ms:", "total ms:", "read kB:", "written kB:", "cache hits:"));
+        for (Phase phase : phases(spans())) {
+            lines.add(Arrays.asList(
+                    phase.name,
+                    Long.toString(phase.count),
+                    millis(phase.end - phase.start),
+                    millis(phase.total),
+                    Long.toString(phase.bytesRead / 1024),
+                    Long.toString(phase.bytesWritten / 1024),
+                    Long.toString(phase.cacheHits)
+            ));
+        }
+        return lines;
+    }
+
+    private List<Span> spans() {
+        return records.stream()
+                .sorted(Comparator.comparingLong(span -> span.start))
+                .collect(toList());
+    }
+
+    private static List<Phase> phases(List<Span> spans) {
+        Map<String, Phase> phases = new LinkedHashMap<>();
+        for (Span span : spans) {
+            Phase phase = phases.computeIfAbsent(span.phase, Phase::new);
+            phase.count++;
+            phase.start = Math.min(phase.start, span.start);
+            phase.end = Math.max(phase.end, span.end);
+            phase.total += span.end - span.start;
+            phase.bytesRead += span.bytesRead;
+            phase.bytesWritten += span.bytesWritten;
+            if (span.cacheHit) {
+                phase.cacheHits++;
+            }
+        }
+        return new ArrayList<>(phases.values());
+    }
+
+    private static String millis(long nanos) {
+        return Long.toString(nanos / 1_000_000);
+    }
+
+    static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static class Phase {
+
+        private final String name;
+
+        private long count;
+
+        private long start = Long.MAX_VALUE;
+
+        private long end = Long.MIN_VALUE;
+
+        private long total;
+
+        private long bytesRead;
+
+        private long bytesWritten;
+
+        private long cacheHits;
+
+        Phase(String name) {
+            this.name = name;
+        }
+
+    }
+
+    interface Task<T, E extends Exception> {
+
+        T run() throws E, InterruptedException;
+
+    }
+
+    class Span implements AutoCloseable {
+
+        private final String phase;
+
+        private final String subject;
+
+        private final String thread = Thread.currentThread().getName();
+
+        private final PhaseEvent event = new PhaseEvent();
+
+        private final long start;
+
+        private long end;
+
+        private long bytesRead;
+
+        private long bytesWritten;
+
+        private boolean cacheHit;
+
+        private Span(String phase, String subject) {
+            this.phase = phase;
+            this.subject = subject;
+            this.event.begin();
+            this.start = System.nanoTime();
+        }
+
+        Span read(long bytes) {
+            bytesRead += bytes;
+            return this;
+        }
+
+        Span read(Path file) throws IOException {
+            return read(Files.size(file));
+        }
+
+        Span written(long bytes) {
+            bytesWritten += bytes;
+            return this;
+        }
+
+        Span written(Path file) throws IOException {
+            return written(Files.isDirectory(file) ? FileUtils.size(file) : Files.size(file));
+        }
+
+        Span cacheHit() {
+            cacheHit = true;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            end = System.nanoTime();
+            records.add(this);
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = phase;
+                event.subject = subject;
+                event.bytesRead = bytesRead;
+                event.bytesWritten = bytesWritten;
+                event.cacheHit = cacheHit;
+                event.commit();
+            }
+        }
+
+    }
+
+    /**
+     * Recorded while a flight recording is running, e.g. with {@code MAVEN_OPTS=-XX:StartFlightRecording}.
+     */
+    @Name("de.fluxparticle.jpackage.Phase")
+    @Label("jpackage Phase")
+    @Category("jpackage-maven-plugin")
+    @Description("A phase of the image goal, optionally for a single jar")
+    static class PhaseEvent extends Event {
+
+        @Label("Phase")
+        String phase;
+
+        @Label("Subject")
+        String subject;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+
+        @Label("Cache Hit")
+        boolean cacheHit;
+
+    }
+
+}
@@ -0,0 +1,627 @@
+package de.fluxparticle.jpackage;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.signature.SignatureReader;
+import org.objectweb.asm.signature.SignatureVisitor;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.SourceInterpreter;
+import org.objectweb.asm.tree.analysis.SourceValue;
+
+import java.io.IOException;
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReader;
+import java.lang.module.ModuleReference;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipFile;
+
+import static java.util.Collections.emptyList;
+import static org.objectweb.asm.Opcodes.ALOAD;
+import static org.objectweb.asm.Opcodes.ASM9;
+import static org.objectweb.asm.Opcodes.ASTORE;
+import static org.objectweb.asm.Opcodes.CHECKCAST;
+import static org.objectweb.asm.Opcodes.DUP;
+import static org.objectweb.asm.Opcodes.GETFIELD;
+import static org.objectweb.asm.Opcodes.GETSTATIC;
+import static org.objectweb.asm.Opcodes.LDC;
+import static org.objectweb.asm.Opcodes.PUTFIELD;
+import static org.objectweb.asm.Opcodes.PUTSTATIC;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class BytecodeAnalyzer {
+
+    private static final String PREFIX_SERVICES = "META-INF/services/";
+
+    private static final Map<String, String> SYSTEM_PACKAGES = new HashMap<>();
+
+    private static final Map<String, ModuleReference> SYSTEM_MODULES = new HashMap<>();
+
+    static {
+        for (ModuleReference reference : ModuleFinder.ofSystem().findAll()) {
+            ModuleDescriptor descriptor = reference.descriptor();
+            SYSTEM_MODULES.put(descriptor.name(), reference);
+            for (String packageName : descriptor.packages()) {
+                SYSTEM_PACKAGES.put(packageName, descriptor.name());
+            }
+        }
+    }
+
+    private final Map<String, String> packages = new HashMap<>(SYSTEM_PACKAGES);
+
+    private final Map<String, Path> jars = new HashMap<>();
+
+    private final Set<String> missingPackages = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param modulePath the jars the analysed jar may depend on
+     */
+    BytecodeAnalyzer(List<String> modulePath) throws IOException {
+        for (String element : modulePath) {
+            Path jar = Path.of(element);
+            JarMetadata metadata = JarMetadata.of(jar);
+            ModuleDescriptor descriptor = metadata.getDescriptor();
+            String moduleName = descriptor != null ? descriptor.name() : metadata.getModuleName();
+            Set<String> modulePackages = descriptor != null ? descriptor.packages() : metadata.getPackages();
+            for (String packageName : modulePackages) {
+                packages.putIfAbsent(packageName, moduleName);
+            }
+            jars.putIfAbsent(moduleName, jar);
+        }
+    }
+
+    /**
+     * Computes the module descriptor of a non-modular jar from its class files: {@code requires} from all referenced
+     * classes, {@code exports} for all packages, {@code uses} from the class constants passed to
+     * {@code ServiceLoader.load} and {@code loadInstalled}, directly or through a local variable or field, and
+     * {@code provides} from {@code META-INF/services}. References to packages that cannot be found are left out of
+     * the descriptor and collected in {@link #getMissingPackages}.
+     */
+    ModuleInfo analyse(Path jar, String moduleName) throws IOException {
+        return analyse(jar, moduleName, MultiRelease.BASE);
+    }
+
+    /**
+     * Like {@link #analyse(Path, String)} for the classes a multi-release jar has on {@code release}: the classes of
+     * {@code META-INF/versions/N} with the highest {@code N <= release} replace the ones below.
+     */
+    ModuleInfo analyse(Path jar, String moduleName, int release) throws IOException {
+        Set<String> ownPackages = new TreeSet<>();
+
+        Set<String> classes = new HashSet<>();
+        Map<String, byte[]> services = new HashMap<>();
+        Dependencies dependencies = new Dependencies();
+
+        try (FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+            ZipDirectory directory = ZipDirectory.read(channel);
+
+            Map<String, ZipDirectory.Entry> view = new HashMap<>();
+            Map<String, Integer> viewVersions = new HashMap<>();
+            for (ZipDirectory.Entry entry : directory.getEntries()) {
+                String name = entry.getName();
+
+                if (name.startsWith(PREFIX_SERVICES) && !entry.isDirectory() && name.indexOf('/', PREFIX_SERVICES.length()) < 0) {
+                    services.put(name.substring(PREFIX_SERVICES.length()), directory.read(entry));
+                    continue;
+                }
+
+                int version = MultiRelease.version(name);
+                if (version < 0 || version > release) {
+                    continue;
+                }
+                name = MultiRelease.unversionedName(name);
+
+                if (!name.endsWith(".class") || name.startsWith("META-INF/") || name.equals(JarPatcher.MODULE_INFO)) {
+                    continue;
+                }
+
+                Integer previous = viewVersions.get(name);
+                if (previous == null || previous < version) {
+                    view.put(name, entry);
+                    viewVersions.put(name, version);
+                }
+            }
+
+            for (Map.Entry<String, ZipDirectory.Entry> entry : view.entrySet()) {
+                String className = entry.getKey().substring(0, entry.getKey().length() - ".class".length());
+                classes.add(className);
+                int slash = className.lastIndexOf('/');
+                if (slash > 0) {
+                    ownPackages.add(className.substring(0, slash).replace('/', '.'));
+                }
+                try {
+                    byte[] bytes = directory.read(entry.getValue());
+                    new ClassReader(bytes).accept(dependencies, ClassReader.SKIP_FRAMES);
+                    if (dependencies.passesClasses) {
+                        dependencies.analyseClassValues(bytes);
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new UnsupportedClassException(jar, entry.getValue().getName(), e);
+                }
+            }
+        }
+
+        ModuleInfo info = new ModuleInfo(moduleName);
+
+        for (String packageName : ownPackages) {
+            info.addExports(packageName, emptyList());
+        }
+
+        for (String packageName : dependencies.packages) {
+            if (!ownPackages.contains(packageName)) {
+                String module = packages.get(packageName);
+                if (module != null) {
+                    info.addRequires(module);
+                } else {
+                    missingPackages.add(packageName);
+                }
+            }
+        }
+
+        for (String service : dependencies.getServices()) {
+            if (isAccessible(service, classes, info)) {
+                info.addUses(service.replace('/', '.'));
+            }
+        }
+
+        for (Map.Entry<String, byte[]> service : services.entrySet()) {
+            String serviceName = service.getKey().trim();
+            if (!isAccessible(serviceName.replace('.', '/'), classes, info)) {
+                continue;
+            }
+
+            for (String line : new String(service.getValue(), StandardCharsets.UTF_8).split("\n")) {
+                int comment = line.indexOf('#');
+                String provider = (comment >= 0 ? line.substring(0, comment) : line).trim();
+                if (!provider.isEmpty() && classes.contains(provider.replace('.', '/'))) {
+                    info.addProvides(serviceName, provider);
+                }
+            }
+        }
+
+        return info;
+    }
+
+    /**
+     * The packages referenced by the analysed jars that are neither in the jars themselves, nor on the module path,
+     * nor in the JDK. jdeps fails on them, the descriptor simply does not require anything for them.
+     */
+    SortedSet<String> getMissingPackages() {
+        return new TreeSet<>(missingPackages);
+    }
+
+    /**
+     * A class file ASM cannot read, e.g. of a newer release than it supports.
+     */
+    static class UnsupportedClassException extends IOException {
+
+        UnsupportedClassException(Path jar, String entryName, IllegalArgumentException cause) {
+            super("Cannot analyse " + entryName + " of " + jar.getFileName() + ": " + cause.getMessage(), cause);
+        }
+
+    }
+
+    /**
+     * Checks that a service type exists either in the module itself or in a module it can require, which also adds
+     * the {@code requires} if necessary.
+     */
+    private boolean isAccessible(String internalName, Set<String> classes, ModuleInfo info) throws IOException {
+        if (classes.contains(internalName)) {
+            return true;
+        }
+
+        int slash = internalName.lastIndexOf('/');
+        if (slash < 0) {
+            return false;
+        }
+
+        String module = packages.get(internalName.substring(0, slash).replace('/', '.'));
+        if (module == null || !exists(module, internalName + ".class")) {
+            return false;
+        }
+
+        info.addRequires(module);
+        return true;
+    }
+
+    private boolean exists(String module, String entryName) throws IOException {
+        ModuleReference reference = SYSTEM_MODULES.get(module);
+        if (reference != null) {
+            try (ModuleReader reader = reference.open()) {
+                return reader.find(entryName).isPresent();
+            }
+        }
+
+        Path jar = jars.get(module);
+        if (jar != null) {
+            try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+                return zipFile.getEntry(entryName) != null;
+            }
+        }
+
+        return false;
+    }
+
+    private static class Dependencies extends ClassVisitor {
+
+        private static final String SERVICE_LOADER = "java/util/ServiceLoader";
+
+        private static final Type CLASS = Type.getType(Class.class);
+
+        private final Set<String> packages = new HashSet<>();
+
+        private final Set<String> services = new HashSet<>();
+
+        /**
+         * The fields passed to {@code ServiceLoader.load}, as {@code owner.name}.
+         */
+        private final Set<String> serviceFields = new HashSet<>();
+
+        /**
+         * The class constants stored in fields, by {@code owner.name}.
+         */
+        private final Map<String, Set<String>> fieldClasses = new HashMap<>();
+
+        /**
+         * The current class loads services or has a field of type {@code Class}, so the values of its methods have to
+         * be analysed.
+         */
+        private boolean passesClasses;
+
+        private final SignatureVisitor signatureVisitor = new SignatureVisitor(ASM9) {
+            @Override
+            public void visitClassType(String name) {
+                addInternalName(name);
+            }
+        };
+
+        private final AnnotationVisitor annotationVisitor = new AnnotationVisitor(ASM9) {
+            @Override
+            public void visit(String name, Object value) {
+                addConstant(value);
+            }
+
+            @Override
+            public void visitEnum(String name, String descriptor, String value) {
+                addDescriptor(descriptor);
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotation(String name, String descriptor) {
+                addDescriptor(descriptor);
+                return this;
+            }
+
+            @Override
+            public AnnotationVisitor visitArray(String name) {
+                return this;
+            }
+        };
+
+        private final FieldVisitor fieldVisitor = new FieldVisitor(ASM9) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                return Dependencies.this.visitAnnotation(descriptor, visible);
+            }
+        };
+
+        private final MethodVisitor methodVisitor = new MethodVisitor(ASM9) {
+
+            @Override
+            public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                return Dependencies.this.visitAnnotation(descriptor, visible);
+            }
+
+            @Override
+            public AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor, boolean visible) {
+                return Dependencies.this.visitAnnotation(descriptor, visible);
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotationDefault() {
+                return annotationVisitor;
+            }
+
+            @Override
+            public void visitTypeInsn(int opcode, String type) {
+                addInternalName(type);
+            }
+
+            @Override
+            public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+                addInternalName(owner);
+                addDescriptor(descriptor);
+            }
+
+            @Override
+            public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+                addInternalName(owner);
+                addDescriptor(descriptor);
+
+                if (isServiceLoad(owner, name)) {
+                    passesClasses = true;
+                }
+            }
+
+            @Override
+            public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+                addDescriptor(descriptor);
+                addConstant(bootstrapMethodHandle);
+                for (Object argument : bootstrapMethodArguments) {
+                    addConstant(argument);
+                }
+            }
+
+            @Override
+            public void visitLdcInsn(Object value) {
+                addConstant(value);
+            }
+
+            @Override
+            public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+                addDescriptor(descriptor);
+            }
+
+            @Override
+            public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+                if (type != null) {
+                    addInternalName(type);
+                }
+            }
+
+            @Override
+            public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end, int index) {
+                addDescriptor(descriptor);
+                addSignature(signature);
+            }
+        };
+
+        Dependencies() {
+            super(ASM9);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            passesClasses = false;
+            if (superName != null) {
+                addInternalName(superName);
+            }
+            if (interfaces != null) {
+                for (String i : interfaces) {
+                    addInternalName(i);
+                }
+            }
+            addSignature(signature);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            addDescriptor(descriptor);
+            return annotationVisitor;
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+            if (descriptor.equals(CLASS.getDescriptor())) {
+                passesClasses = true;
+            }
+            addDescriptor(descriptor);
+            addSignature(signature);
+            return fieldVisitor;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            addDescriptor(descriptor);
+            addSignature(signature);
+            if (exceptions != null) {
+                for (String exception : exceptions) {
+                    addInternalName(exception);
+                }
+            }
+            return methodVisitor;
+        }
+
+        /**
+         * The services loaded by all visited classes.
+         */
+        Set<String> getServices() {
+            Set<String> result = new HashSet<>(services);
+            for (String field : serviceFields) {
+                result.addAll(fieldClasses.getOrDefault(field, Set.of()));
+            }
+            return result;
+        }
+
+        /**
+         * Follows the values of the methods of a class to the class constants that are passed to
+         * {@code ServiceLoader.load} and {@code loadInstalled} or that are stored in fields of type {@code Class}.
+         */
+        void analyseClassValues(byte[] bytes) {
+            ClassNode node = new ClassNode(ASM9);
+            new ClassReader(bytes).accept(node, ClassReader.SKIP_FRAMES);
+
+            for (MethodNode method : node.methods) {
+                Frame<SourceValue>[] frames;
+                try {
+                    frames = new Analyzer<>(new SourceInterpreter()).analyze(node.name, method);
+                } catch (AnalyzerException e) {
+                    continue;
+                }
+
+                InsnList instructions = method.instructions;
+                for (int i = 0; i < instructions.size(); i++) {
+                    AbstractInsnNode instruction = instructions.get(i);
+                    Frame<SourceValue> frame = frames[i];
+                    if (frame == null) {
+                        continue;
+                    }
+
+                    if (instruction instanceof MethodInsnNode) {
+                        MethodInsnNode call = (MethodInsnNode) instruction;
+                        if (!isServiceLoad(call.owner, call.name)) {
+                            continue;
+                        }
+                        Type[] arguments = Type.getArgumentTypes(call.desc);
+                        for (int argument = 0; argument < arguments.length; argument++) {
+                            if (arguments[argument].equals(CLASS)) {
+                                SourceValue value = frame.getStack(frame.getStackSize() - arguments.length + argument);
+                                classes(value, instructions, frames, services, serviceFields, new HashSet<>());
+                            }
+                        }
+                    } else if (instruction.getOpcode() == PUTFIELD || instruction.getOpcode() == PUTSTATIC) {
+                        FieldInsnNode field = (FieldInsnNode) instruction;
+                        if (field.desc.equals(CLASS.getDescriptor())) {
+                            SourceValue value = frame.getStack(frame.getStackSize() - 1);
+                            Set<String> classes = fieldClasses.computeIfAbsent(field.owner + '.' + field.name, f -> new HashSet<>());
+                            classes(value, instructions, frames, classes, new HashSet<>(), new HashSet<>());
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Collects the class constants a value may come from, through local variables and casts, and the fields it
+         * is read from.
+         */
+        private static void classes(SourceValue value, InsnList instructions, Frame<SourceValue>[] frames,
+                                    Set<String> classes, Set<String> fields, Set<AbstractInsnNode> visited) {
+            for (AbstractInsnNode source : value.insns) {
+                if (!visited.add(source)) {
+                    continue;
+                }
+
+                Frame<SourceValue> frame = frames[instructions.indexOf(source)];
+                switch (source.getOpcode()) {
+                    case LDC:
+                        Object constant = ((LdcInsnNode) source).cst;
+                        if (constant instanceof Type && ((Type) constant).getSort() == Type.OBJECT) {
+                            classes.add(((Type) constant).getInternalName());
+                        }
+                        break;
+                    case ALOAD:
+                        classes(frame.getLocal(((VarInsnNode) source).var), instructions, frames, classes, fields, visited);
+                        break;
+                    case ASTORE:
+                    case CHECKCAST:
+                    case DUP:
+                        classes(frame.getStack(frame.getStackSize() - 1), instructions, frames, classes, fields, visited);
+                        break;
+                    case GETFIELD:
+                    case GETSTATIC:
+                        FieldInsnNode field = (FieldInsnNode) source;
+                        fields.add(field.owner + '.' + field.name);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        private static boolean isServiceLoad(String owner, String name) {
+            return owner.equals(SERVICE_LOADER) && (name.equals("load") || name.equals("loadInstalled"));
+        }
+
+        private void addConstant(Object value) {
+            if (value instanceof Type) {
+                addType((Type) value);
+            } else if (value instanceof Handle) {
+                Handle handle = (Handle) value;
+                addInternalName(handle.getOwner());
+                addDescriptor(handle.getDesc());
+            }
+        }
+
+        private void addDescriptor(String descriptor) {
+            if (descriptor != null) {
+                addType(Type.getType(descriptor));
+            }
+        }
+
+        private void addSignature(String signature) {
+            if (signature != null) {
+                new SignatureReader(signature).accept(signatureVisitor);
+            }
+        }
+
+        private void addType(Type type) {
+            switch (type.getSort()) {
+                case Type.METHOD:
+                    for (Type argument : type.getArgumentTypes()) {
+                        addType(argument);
+                    }
+                    addType(type.getReturnType());
+                    break;
+                case Type.ARRAY:
+                    addType(type.getElementType());
+                    break;
+                case Type.OBJECT:
+                    addPackage(type.getInternalName());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void addInternalName(String name) {
+            if (name.startsWith("[")) {
+                addDescriptor(name);
+            } else {
+                addPackage(name);
+            }
+        }
+
+        private void addPackage(String internalName) {
+            int slash = internalName.lastIndexOf('/');
+            if (slash > 0) {
+                packages.add(internalName.substring(0, slash).replace('/', '.'));
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,111 @@
+package de.fluxparticle.jpackage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class ContentHash {
+
+    private static final Map<Path, Stamped> HASHES = new ConcurrentHashMap<>();
+
+    private final MessageDigest digest = sha256();
+
+    /**
+     * SHA-256 of the content of {@code file}. Results are remembered as long as size and modification time of the
+     * file do not change.
+     */
+    static String of(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+
+        Stamped stamped = HASHES.get(key);
+        if (stamped == null || stamped.size != size || stamped.lastModified != lastModified) {
+            MessageDigest digest = sha256();
+            try (InputStream in = Files.newInputStream(key)) {
+                byte[] buffer = new byte[65536];
+                int n;
+                while ((n = in.read(buffer)) >= 0) {
+                    digest.update(buffer, 0, n);
+                }
+            }
+            stamped = new Stamped(size, lastModified, hex(digest.digest()));
+            HASHES.put(key, stamped);
+        }
+
+        return stamped.hash;
+    }
+
+    ContentHash add(String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        return this;
+    }
+
+    ContentHash addFile(Path file) throws IOException {
+        return add(of(file));
+    }
+
+    String get() {
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static class Stamped {
+
+        private final long size;
+
+        private final long lastModified;
+
+        private final String hash;
+
+        Stamped(long size, long lastModified, String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+    }
+
+}
@@ -0,0 +1,96 @@
+package de.fluxparticle.jpackage;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Collections.emptySet;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class DependencyGraph {
+
+    private final Set<Path> artifacts = new HashSet<>();
+
+    private final Map<Path, Set<Path>> dependencies = new HashMap<>();
+
+    static DependencyGraph of(MavenProject project) {
+        DependencyGraph graph = new DependencyGraph();
+
+        Map<String, Path> files = new HashMap<>();
+        for (Artifact artifact : project.getArtifacts()) {
+            File file = artifact.getFile();
+            if (file != null) {
+                files.put(artifact.getId(), file.toPath());
+                graph.artifacts.add(file.toPath());
+            }
+        }
+
+        for (Artifact artifact : project.getArtifacts()) {
+            Path file = files.get(artifact.getId());
+            List<String> trail = artifact.getDependencyTrail();
+            if (file == null || trail == null || trail.size() < 2) {
+                continue;
+            }
+
+            Path parent = files.get(trail.get(trail.size() - 2));
+            if (parent != null) {
+                graph.dependencies.computeIfAbsent(parent, p -> new LinkedHashSet<>()).add(file);
+            }
+        }
+
+        return graph;
+    }
+
+    /**
+     * {@code true} if {@code jar} is an artifact of the project, so its dependencies are known.
+     */
+    boolean contains(Path jar) {
+        return artifacts.contains(jar);
+    }
+
+    Set<Path> getDependencies(Path jar) {
+        return dependencies.getOrDefault(jar, emptySet());
+    }
+
+    /**
+     * The dependencies of {@code jar}, their dependencies and so on.
+     */
+    Set<Path> getTransitiveDependencies(Path jar) {
+        Set<Path> result = new LinkedHashSet<>();
+        Deque<Path> queue = new ArrayDeque<>(getDependencies(jar));
+        while (!queue.isEmpty()) {
+            Path dependency = queue.poll();
+            if (result.add(dependency)) {
+                queue.addAll(getDependencies(dependency));
+            }
+        }
+        return result;
+    }
+
+}
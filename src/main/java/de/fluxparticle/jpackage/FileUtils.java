@@ -0,0 +1,159 @@
+package de.fluxparticle.jpackage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class FileUtils {
+
+    static final long FIXED_TIME = LocalDateTime.of(1980, 1, 1, 0, 0)
+            .atZone(ZoneId.systemDefault())
+            .toInstant()
+            .toEpochMilli();
+
+    private static final long MIN_ENTRY_TIME = LocalDateTime.of(1980, 1, 1, 0, 0)
+            .toInstant(ZoneOffset.UTC)
+            .toEpochMilli();
+
+    private FileUtils() {
+    }
+
+    /**
+     * The time to set on zip entries so that they show the UTC date and time of {@code millis} in every time zone,
+     * like the Maven archiver does for {@code project.build.outputTimestamp}. Zip entries store local time.
+     */
+    static long entryTime(long millis) {
+        millis = Math.max(millis, MIN_ENTRY_TIME);
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC)
+                .atZone(ZoneId.systemDefault())
+                .toInstant()
+                .toEpochMilli();
+    }
+
+    static void deleteDir(Path dir) throws IOException {
+        Files.walkFileTree(dir, new FileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Deletes {@code dir} in a daemon thread. A directory that is not deleted completely, e.g. because the JVM exits
+     * first, is left behind and should be swept by a later build.
+     */
+    static Thread deleteDirInBackground(Path dir) {
+        Thread thread = new Thread(() -> {
+            try {
+                deleteDir(dir);
+            } catch (IOException e) {
+                // swept by the next build
+            }
+        }, "delete " + dir.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    static void copyDir(Path source, Path target) throws IOException {
+        try (Stream<Path> files = Files.walk(source)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Path copy = target.resolve(source.relativize(file).toString());
+                if (Files.isDirectory(file)) {
+                    Files.createDirectories(copy);
+                } else {
+                    Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+            }
+        }
+    }
+
+    /**
+     * Packs the content of {@code dir} into a jar. Entries are sorted and carry a fixed time, so the same content
+     * always results in the same jar.
+     */
+    static void jar(Path dir, Path jar) throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(dir)) {
+            files = stream
+                    .filter(file -> !file.equals(dir))
+                    .sorted()
+                    .collect(toList());
+        }
+
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            for (Path file : files) {
+                String name = dir.relativize(file).toString().replace(File.separatorChar, '/');
+                boolean directory = Files.isDirectory(file);
+
+                JarEntry entry = new JarEntry(directory ? name + "/" : name);
+                entry.setTime(FIXED_TIME);
+                out.putNextEntry(entry);
+                if (!directory) {
+                    Files.copy(file, out);
+                }
+                out.closeEntry();
+            }
+        }
+    }
+
+    static long size(Path path) throws IOException {
+        try (Stream<Path> files = Files.walk(path)) {
+            return files
+                    .filter(Files::isRegularFile)
+                    .mapToLong(file -> file.toFile().length())
+                    .sum();
+        }
+    }
+
+}
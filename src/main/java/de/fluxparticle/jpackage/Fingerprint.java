@@ -0,0 +1,159 @@
+package de.fluxparticle.jpackage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class Fingerprint {
+
+    private static final String OPTIONS = "options";
+
+    private static final String ELEMENT = "element.";
+
+    private final String options;
+
+    private final Map<String, String> elements;
+
+    private Fingerprint(String options, Map<String, String> elements) {
+        this.options = options;
+        this.elements = elements;
+    }
+
+    /**
+     * Fingerprints the content of all module path elements (jars or directories) and the options, which should
+     * contain everything else the result depends on.
+     */
+    static Fingerprint of(List<String> modulePath, List<String> options) throws IOException {
+        ContentHash optionsHash = new ContentHash()
+                .add(System.getProperty("java.home"))
+                .add(Runtime.version().toString());
+        for (String option : options) {
+            optionsHash.add(option);
+        }
+
+        Map<String, String> elements = new LinkedHashMap<>();
+        for (String element : modulePath) {
+            elements.put(element, hash(Path.of(element)));
+        }
+
+        return new Fingerprint(optionsHash.get(), elements);
+    }
+
+    private static String hash(Path element) throws IOException {
+        if (!Files.exists(element)) {
+            return "";
+        }
+
+        if (!Files.isDirectory(element)) {
+            return ContentHash.of(element);
+        }
+
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(element)) {
+            files = stream
+                    .filter(Files::isRegularFile)
+                    .sorted()
+                    .collect(toList());
+        }
+
+        ContentHash hash = new ContentHash();
+        for (Path file : files) {
+            hash.add(element.relativize(file).toString());
+            hash.addFile(file);
+        }
+        return hash.get();
+    }
+
+    /**
+     * @return the stored fingerprint or {@code null} if there is none
+     */
+    static Fingerprint load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+
+        Map<String, String> elements = new LinkedHashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(ELEMENT)) {
+                elements.put(key.substring(ELEMENT.length()), properties.getProperty(key));
+            }
+        }
+
+        return new Fingerprint(properties.getProperty(OPTIONS), elements);
+    }
+
+    void store(Path file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(OPTIONS, options);
+        elements.forEach((element, hash) -> properties.setProperty(ELEMENT + element, hash));
+
+        Files.createDirectories(file.getParent());
+        try (OutputStream out = Files.newOutputStream(file)) {
+            properties.store(out, null);
+        }
+    }
+
+    /**
+     * The overall fingerprint of options and all elements. Like {@link #changedElements} it does not depend on the
+     * order of the elements, which a loaded fingerprint does not know.
+     */
+    String get() {
+        ContentHash hash = new ContentHash().add(options);
+        new TreeMap<>(elements).forEach((element, elementHash) -> hash.add(element).add(elementHash));
+        return hash.get();
+    }
+
+    /**
+     * The elements whose content differs from {@code previous} or {@code null} if options or the list of elements
+     * changed.
+     */
+    Set<String> changedElements(Fingerprint previous) {
+        if (previous == null || !Objects.equals(options, previous.options) || !elements.keySet().equals(previous.elements.keySet())) {
+            return null;
+        }
+
+        Set<String> changed = new LinkedHashSet<>();
+        elements.forEach((element, hash) -> {
+            if (!hash.equals(previous.elements.get(element))) {
+                changed.add(element);
+            }
+        });
+        return changed;
+    }
+
+}
@@ -0,0 +1,400 @@
+package de.fluxparticle.jpackage;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class FixCache {
+
+    private static final String JAR = "fixed.jar";
+
+    private static final String RUNTIMES = "runtimes";
+
+    private static final String LOCKS = "locks";
+
+    private static final Map<Path, ReentrantLock> LOCAL_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path directory;
+
+    private final long maxSize;
+
+    private final String pluginVersion;
+
+    private final Log log;
+
+    /**
+     * @param directory     the cache directory, shared by all builds
+     * @param maxSize       the size in bytes the cache is trimmed to by {@link #evict()}
+     * @param pluginVersion part of every key, so a new plugin version never uses old results
+     */
+    FixCache(Path directory, long maxSize, String pluginVersion, Log log) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.pluginVersion = pluginVersion;
+        this.log = log;
+    }
+
+    /**
+     * A lock on a cache entry that is held by a thread of this process and by this process against other processes.
+     */
+    static class Lock implements AutoCloseable {
+
+        private final ReentrantLock localLock;
+
+        private final FileChannel channel;
+
+        private final Path file;
+
+        private Lock(ReentrantLock localLock, FileChannel channel, Path file) {
+            this.localLock = localLock;
+            this.channel = channel;
+            this.file = file;
+        }
+
+        /**
+         * Deletes the lock file while the lock is still held. Builds that wait for it find it deleted and lock a new one.
+         */
+        void delete() throws IOException {
+            Files.deleteIfExists(file);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                channel.close();
+            } finally {
+                localLock.unlock();
+            }
+        }
+
+    }
+
+    /**
+     * @param options everything else that has an influence on the result
+     */
+    String key(Path jar, List<String> modulePath, String... options) throws IOException {
+        return key(pluginVersion, jar, modulePath, options);
+    }
+
+    /**
+     * Like {@link #key(Path, List, String...)} without a cache.
+     */
+    static String key(String pluginVersion, Path jar, List<String> modulePath, String... options) throws IOException {
+        ContentHash hash = new ContentHash()
+                .add(pluginVersion);
+
+        for (String option : options) {
+            hash.add(option);
+        }
+
+        // the generated descriptor and its module directory are named after the jar
+        hash.add(JarMetadata.of(jar).getModuleName());
+        hash.addFile(jar);
+
+        for (String element : modulePath) {
+            hash.addFile(Path.of(element));
+        }
+
+        return hash.get();
+    }
+
+    /**
+     * Locks the entry {@code key}, so that builds running in parallel, in this or other processes, do not compute and
+     * store it at the same time. Blocks until the lock is available.
+     */
+    Lock lock(String key) throws IOException {
+        return lock(key, true);
+    }
+
+    /**
+     * Like {@link #lock(String)} but returns {@code null} instead of waiting.
+     */
+    Lock tryLock(String key) throws IOException {
+        return lock(key, false);
+    }
+
+    private Lock lock(String key, boolean wait) throws IOException {
+        Path file = Files.createDirectories(directory.resolve(LOCKS)).resolve(key);
+        ReentrantLock localLock = LOCAL_LOCKS.computeIfAbsent(file, f -> new ReentrantLock());
+        if (wait) {
+            localLock.lock();
+        } else if (!localLock.tryLock()) {
+            return null;
+        }
+
+        FileChannel channel = null;
+        try {
+            while (true) {
+                channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                Object fileKey = fileKey(file);
+                if (wait) {
+                    channel.lock();
+                } else if (channel.tryLock() == null) {
+                    channel.close();
+                    localLock.unlock();
+                    return null;
+                }
+                if (fileKey != null && fileKey.equals(fileKey(file))) {
+                    return new Lock(localLock, channel, file);
+                }
+                // the lock file was deleted together with its entry while we were waiting
+                channel.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            localLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * @return what identifies the file on its file system or {@code null} if it does not exist
+     */
+    private static Object fileKey(Path file) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return attributes.fileKey() != null ? attributes.fileKey() : file;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    boolean contains(String key) {
+        return Files.exists(directory.resolve(key).resolve(JAR));
+    }
+
+    /**
+     * Restores a cached result: the fixed jar to {@code target} and the generated module descriptors into
+     * {@code modulesDir}.
+     *
+     * @return {@code false} on a cache miss
+     */
+    boolean restore(String key, Path target, Path modulesDir) throws IOException {
+        if (!contains(key)) {
+            return false;
+        }
+
+        Path entry = directory.resolve(key);
+        Path jar = entry.resolve(JAR);
+
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+
+        link(jar, target);
+
+        try (DirectoryStream<Path> modules = Files.newDirectoryStream(entry, Files::isDirectory)) {
+            for (Path module : modules) {
+                copyModule(module, modulesDir);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Copies a fixed jar to {@code target} and the files of its module directory into {@code modulesDir}, the same way
+     * a cached result is restored.
+     */
+    static void copy(Path fixedJar, Path moduleDir, Path target, Path modulesDir) throws IOException {
+        if (!fixedJar.equals(target)) {
+            link(fixedJar, target);
+        }
+        if (!moduleDir.getParent().equals(modulesDir)) {
+            copyModule(moduleDir, modulesDir);
+        }
+    }
+
+    private static void copyModule(Path module, Path modulesDir) throws IOException {
+        FileUtils.copyDir(module, modulesDir.resolve(module.getFileName().toString()));
+    }
+
+    /**
+     * Stores a fixed jar together with the directory its module descriptor was generated in.
+     */
+    void store(String key, Path fixedJar, Path moduleDir) throws IOException {
+        Path entry = directory.resolve(key);
+        if (Files.exists(entry)) {
+            return;
+        }
+
+        Path tmp = Files.createDirectories(directory.resolve("tmp-" + UUID.randomUUID()));
+        try {
+            Files.copy(fixedJar, tmp.resolve(JAR));
+
+            FileUtils.copyDir(moduleDir, tmp.resolve(moduleDir.getFileName().toString()));
+
+            move(tmp, entry);
+        } finally {
+            if (Files.exists(tmp)) {
+                FileUtils.deleteDir(tmp);
+            }
+        }
+    }
+
+    /**
+     * The cached runtime image {@code key}. The caller holds the {@link #lock} of the key for as long as the image is
+     * used, so that {@link #evict()} cannot delete it in the meantime.
+     *
+     * @return the cached runtime image or {@code null} on a cache miss
+     */
+    Path runtime(String key) throws IOException {
+        Path runtime = directory.resolve(RUNTIMES).resolve(key);
+        if (!Files.isDirectory(runtime)) {
+            return null;
+        }
+        Files.setLastModifiedTime(runtime, FileTime.fromMillis(System.currentTimeMillis()));
+        return runtime;
+    }
+
+    /**
+     * A new directory to build an entry in, on the same file system as the cache.
+     */
+    Path createTempDirectory() throws IOException {
+        return Files.createDirectories(directory.resolve("tmp-" + UUID.randomUUID()));
+    }
+
+    /**
+     * Moves a runtime image that was built in a {@link #createTempDirectory()} into the cache. The caller holds the
+     * {@link #lock} of the key, like for {@link #runtime}.
+     *
+     * @return the cached runtime image
+     */
+    Path storeRuntime(String key, Path runtime) throws IOException {
+        Path entry = Files.createDirectories(directory.resolve(RUNTIMES)).resolve(key);
+        move(runtime, entry);
+        return entry;
+    }
+
+    /**
+     * Moves a directory that was built in a {@link #createTempDirectory()} to its entry, unless another build stored
+     * the same entry in the meantime.
+     */
+    private static void move(Path tmp, Path entry) throws IOException {
+        try {
+            Files.move(tmp, entry, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            try {
+                Files.move(tmp, entry);
+            } catch (FileSystemException e2) {
+                if (!Files.isDirectory(entry)) {
+                    throw e2;
+                }
+            }
+        } catch (FileSystemException e) {
+            if (!Files.isDirectory(entry)) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache is not larger than the configured size.
+     */
+    void evict() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, p -> Files.exists(p.resolve(JAR)))) {
+            stream.forEach(entries::add);
+        }
+
+        Path runtimes = directory.resolve(RUNTIMES);
+        if (Files.isDirectory(runtimes)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(runtimes, Files::isDirectory)) {
+                stream.forEach(entries::add);
+            }
+        }
+
+        Map<Path, FileTime> lastUsed = new HashMap<>();
+        for (Path entry : entries) {
+            lastUsed.put(entry, Files.getLastModifiedTime(entry));
+        }
+        entries.sort(Comparator.comparing(lastUsed::get, Comparator.reverseOrder()));
+
+        long size = 0;
+        for (Path entry : entries) {
+            size += FileUtils.size(entry);
+            if (size > maxSize) {
+                try (Lock lock = tryLock(entry.getFileName().toString())) {
+                    if (lock == null) {
+                        // in use by another build
+                        continue;
+                    }
+                    log.debug("Evict: " + entry);
+                    FileUtils.deleteDir(entry);
+                    lock.delete();
+                }
+            }
+        }
+
+        // lock files of entries that were never stored, e.g. because fixing failed
+        Path locks = directory.resolve(LOCKS);
+        if (Files.isDirectory(locks)) {
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(locks)) {
+                stream.forEach(files::add);
+            }
+            for (Path file : files) {
+                String key = file.getFileName().toString();
+                if (Files.exists(directory.resolve(key)) || Files.exists(runtimes.resolve(key))) {
+                    continue;
+                }
+                try (Lock lock = tryLock(key)) {
+                    if (lock != null && !Files.exists(directory.resolve(key)) && !Files.exists(runtimes.resolve(key))) {
+                        lock.delete();
+                    }
+                }
+            }
+        }
+    }
+
+    private static void link(Path source, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, source);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(source, target);
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+package de.fluxparticle.jpackage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class FixScheduler {
+
+    interface FixTask {
+
+        /**
+         * @param fixedDependencies the results of all direct and transitive dependencies of {@code jar} that were
+         *                          fixed before
+         * @return the path of the fixed jar or {@code null} if it could not be fixed
+         */
+        String fix(Path jar, Map<Path, String> fixedDependencies) throws IOException, InterruptedException;
+
+    }
+
+    private final int threads;
+
+    FixScheduler(int threads) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Runs {@code task} for every jar. A jar is only started after all of its dependencies (as far as they are
+     * part of {@code jars}) are done, independent jars run in parallel.
+     */
+    Map<Path, String> run(Collection<Path> jars, DependencyGraph graph, FixTask task) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(jars.size(), 1)));
+        try {
+            Set<Path> pending = new LinkedHashSet<>(jars);
+            Map<Path, CompletableFuture<String>> futures = new HashMap<>();
+            Map<Path, Map<Path, String>> closures = new ConcurrentHashMap<>();
+            for (Path jar : pending) {
+                schedule(jar, pending, graph, task, executor, futures, closures);
+            }
+
+            Map<Path, String> result = new LinkedHashMap<>();
+            for (Path jar : jars) {
+                result.put(jar, futures.get(jar).get());
+            }
+            return result;
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static CompletableFuture<String> schedule(Path jar, Set<Path> jars, DependencyGraph graph, FixTask task, ExecutorService executor, Map<Path, CompletableFuture<String>> futures, Map<Path, Map<Path, String>> closures) {
+        CompletableFuture<String> future = futures.get(jar);
+        if (future != null) {
+            return future;
+        }
+
+        Map<Path, CompletableFuture<String>> dependencies = new LinkedHashMap<>();
+        for (Path dependency : graph.getDependencies(jar)) {
+            if (jars.contains(dependency)) {
+                dependencies.put(dependency, schedule(dependency, jars, graph, task, executor, futures, closures));
+            }
+        }
+
+        future = CompletableFuture.allOf(dependencies.values().toArray(CompletableFuture[]::new))
+                .thenApplyAsync(v -> {
+                    Map<Path, String> fixedDependencies = new HashMap<>();
+                    dependencies.forEach((dependency, f) -> {
+                        String fixed = f.join();
+                        fixedDependencies.putAll(closures.get(dependency));
+                        if (fixed != null) {
+                            fixedDependencies.put(dependency, fixed);
+                        }
+                    });
+                    closures.put(jar, fixedDependencies);
+
+                    try {
+                        return task.fix(jar, fixedDependencies);
+                    } catch (IOException | InterruptedException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor);
+
+        futures.put(jar, future);
+        return future;
+    }
+
+    /**
+     * Unwraps the cause of a failed task: returns it if it is an {@link IOException} and throws it if it is unchecked
+     * or an {@link InterruptedException}, any other cause is wrapped.
+     */
+    static IOException rethrow(Throwable cause) throws InterruptedException {
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+
+}
@@ -0,0 +1,113 @@
+package de.fluxparticle.jpackage;
+
+import org.apache.maven.execution.MavenSession;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class FixService {
+
+    private static final Map<MavenSession, FixService> SERVICES = new WeakHashMap<>();
+
+    /**
+     * The result of a fix: the fixed jar and the directory its module descriptor was generated in.
+     */
+    static class Fixed {
+
+        private final Path jar;
+
+        private final Path moduleDir;
+
+        Fixed(Path jar, Path moduleDir) {
+            this.jar = jar;
+            this.moduleDir = moduleDir;
+        }
+
+        Path getJar() {
+            return jar;
+        }
+
+        Path getModuleDir() {
+            return moduleDir;
+        }
+
+    }
+
+    interface FixTask {
+
+        /**
+         * @return the result or {@code null} if the jar could not be fixed
+         */
+        Fixed fix() throws IOException, InterruptedException;
+
+    }
+
+    private final Map<String, CompletableFuture<Fixed>> fixes = new ConcurrentHashMap<>();
+
+    FixService() {
+    }
+
+    /**
+     * The service shared by all projects of the reactor {@code session} belongs to.
+     */
+    static FixService of(MavenSession session) {
+        synchronized (SERVICES) {
+            return SERVICES.computeIfAbsent(session, s -> new FixService());
+        }
+    }
+
+    /**
+     * Runs {@code task} once per key and build. Callers with the same key, concurrent or later, wait for the first one
+     * and get its result. A failed task or one that could not fix the jar is not remembered, the next caller runs it
+     * again with its own task.
+     */
+    Fixed fix(String key, FixTask task) throws IOException, InterruptedException {
+        CompletableFuture<Fixed> future = new CompletableFuture<>();
+        CompletableFuture<Fixed> running = fixes.putIfAbsent(key, future);
+        if (running != null) {
+            Fixed fixed;
+            try {
+                fixed = running.get();
+            } catch (ExecutionException e) {
+                return fix(key, task);
+            }
+            return fixed != null ? fixed : fix(key, task);
+        }
+
+        try {
+            Fixed fixed = task.fix();
+            if (fixed == null) {
+                fixes.remove(key, future);
+            }
+            future.complete(fixed);
+            return fixed;
+        } catch (IOException | InterruptedException | RuntimeException | Error e) {
+            fixes.remove(key, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+}
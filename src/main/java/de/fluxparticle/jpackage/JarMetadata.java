@@ -0,0 +1,254 @@
+package de.fluxparticle.jpackage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.module.InvalidModuleDescriptorException;
+import java.lang.module.ModuleDescriptor;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class JarMetadata {
+
+    private static final String MODULE_INFO = "module-info.class";
+
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+    private static final String PREFIX_VERSIONS = "META-INF/versions/";
+
+    private static final Pattern DASH_VERSION = Pattern.compile("-(\\d+(\\.|$))");
+
+    private static final Map<Path, JarMetadata> INDEX = new ConcurrentHashMap<>();
+
+    private final long size;
+
+    private final long lastModified;
+
+    private final String fileName;
+
+    private boolean moduleInfo;
+
+    private byte[] descriptor;
+
+    private byte[] versionedDescriptor;
+
+    private int versionedDescriptorVersion;
+
+    private final SortedSet<Integer> versionedModuleInfos = new TreeSet<>();
+
+    private boolean multiRelease;
+
+    private String automaticModuleName;
+
+    private final SortedSet<Integer> versions = new TreeSet<>();
+
+    private final Set<String> packages = new TreeSet<>();
+
+    private JarMetadata(Path jar, long size, long lastModified) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.fileName = jar.getFileName().toString();
+    }
+
+    /**
+     * The metadata of {@code jar}, read from its central directory. The result is cached as long as size and
+     * modification time of the jar do not change.
+     */
+    static JarMetadata of(Path jar) throws IOException {
+        Path key = jar.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+
+        JarMetadata metadata = INDEX.get(key);
+        if (metadata == null || metadata.size != size || metadata.lastModified != lastModified) {
+            metadata = new JarMetadata(key, size, lastModified);
+            metadata.readDirectory(key);
+            INDEX.put(key, metadata);
+        }
+
+        return metadata;
+    }
+
+    /**
+     * Reads the metadata of {@code jar} without looking into or updating the cache.
+     */
+    static JarMetadata read(Path jar) throws IOException {
+        Path key = jar.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+
+        JarMetadata metadata = new JarMetadata(key, attributes.size(), attributes.lastModifiedTime().toMillis());
+        metadata.readDirectory(key);
+        return metadata;
+    }
+
+    private void readDirectory(Path jar) throws IOException {
+        try (FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+            ZipDirectory directory = ZipDirectory.read(channel);
+
+            // entries are usually grouped by directory, so most classes are in the package of the class before
+            String lastDirectory = null;
+            for (ZipDirectory.Entry entry : directory.getEntries()) {
+                String name = entry.getName();
+
+                if (name.equals(MANIFEST)) {
+                    readManifest(directory.read(entry));
+                    continue;
+                }
+
+                if (name.startsWith(PREFIX_VERSIONS)) {
+                    int slash = name.indexOf('/', PREFIX_VERSIONS.length());
+                    if (slash < 0) {
+                        continue;
+                    }
+
+                    int version;
+                    try {
+                        version = Integer.parseInt(name.substring(PREFIX_VERSIONS.length(), slash));
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                    versions.add(version);
+
+                    name = name.substring(slash + 1);
+                    if (name.equals(MODULE_INFO)) {
+                        versionedModuleInfos.add(version);
+                        if (version <= Runtime.version().feature() && version > versionedDescriptorVersion) {
+                            versionedDescriptor = directory.read(entry);
+                            versionedDescriptorVersion = version;
+                        }
+                        continue;
+                    }
+                } else if (name.equals(MODULE_INFO)) {
+                    moduleInfo = true;
+                    descriptor = directory.read(entry);
+                    continue;
+                } else if (name.startsWith("META-INF/")) {
+                    continue;
+                }
+
+                if (name.endsWith(".class")) {
+                    int slash = name.lastIndexOf('/');
+                    if (slash > 0 && (lastDirectory == null || slash != lastDirectory.length() || !name.startsWith(lastDirectory))) {
+                        lastDirectory = name.substring(0, slash);
+                        packages.add(lastDirectory.replace('/', '.'));
+                    }
+                }
+            }
+        }
+    }
+
+    private void readManifest(byte[] bytes) throws IOException {
+        Attributes attributes = new Manifest(new ByteArrayInputStream(bytes)).getMainAttributes();
+        multiRelease = "true".equalsIgnoreCase(attributes.getValue("Multi-Release"));
+        automaticModuleName = attributes.getValue("Automatic-Module-Name");
+    }
+
+    /**
+     * {@code true} if the jar contains a module descriptor that is used when running on the current JDK.
+     */
+    boolean isModular() {
+        if (moduleInfo) {
+            return true;
+        }
+        return multiRelease
+                && !versionedModuleInfos.isEmpty()
+                && versionedModuleInfos.first() <= Runtime.version().feature();
+    }
+
+    /**
+     * The module descriptor the running JDK would use for this jar or {@code null} if it is not modular.
+     */
+    ModuleDescriptor getDescriptor() {
+        byte[] bytes = multiRelease && versionedDescriptor != null ? versionedDescriptor : descriptor;
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            return ModuleDescriptor.read(ByteBuffer.wrap(bytes));
+        } catch (InvalidModuleDescriptorException e) {
+            return null;
+        }
+    }
+
+    boolean isMultiRelease() {
+        return multiRelease;
+    }
+
+    /**
+     * The versions of all {@code META-INF/versions/N} directories.
+     */
+    SortedSet<Integer> getVersions() {
+        return Collections.unmodifiableSortedSet(versions);
+    }
+
+    /**
+     * The packages of all classes, including the versioned ones.
+     */
+    Set<String> getPackages() {
+        return Collections.unmodifiableSet(packages);
+    }
+
+    /**
+     * The name the module system (and jdeps) uses for this jar as automatic module: either the
+     * {@code Automatic-Module-Name} or the name derived from the file name.
+     */
+    String getModuleName() {
+        if (automaticModuleName != null) {
+            return automaticModuleName;
+        }
+
+        String name = fileName;
+        if (name.endsWith(".jar")) {
+            name = name.substring(0, name.length() - 4);
+        }
+
+        Matcher matcher = DASH_VERSION.matcher(name);
+        if (matcher.find()) {
+            name = name.substring(0, matcher.start());
+        }
+
+        name = name.replaceAll("[^A-Za-z0-9]", ".")
+                .replaceAll("(\\.)(\\1)+", ".");
+
+        if (name.startsWith(".")) {
+            name = name.substring(1);
+        }
+        if (name.endsWith(".")) {
+            name = name.substring(0, name.length() - 1);
+        }
+
+        return name;
+    }
+
+}
@@ -0,0 +1,405 @@
+package de.fluxparticle.jpackage;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static de.fluxparticle.jpackage.ZipDirectory.CENTRAL_HEADER;
+import static de.fluxparticle.jpackage.ZipDirectory.CENTRAL_HEADER_SIZE;
+import static de.fluxparticle.jpackage.ZipDirectory.DEFLATED;
+import static de.fluxparticle.jpackage.ZipDirectory.END_HEADER;
+import static de.fluxparticle.jpackage.ZipDirectory.END_HEADER_SIZE;
+import static de.fluxparticle.jpackage.ZipDirectory.LOCAL_HEADER;
+import static de.fluxparticle.jpackage.ZipDirectory.LOCAL_HEADER_SIZE;
+import static de.fluxparticle.jpackage.ZipDirectory.ZIP64_END_HEADER;
+import static de.fluxparticle.jpackage.ZipDirectory.ZIP64_END_HEADER_SIZE;
+import static de.fluxparticle.jpackage.ZipDirectory.ZIP64_LOCATOR;
+import static de.fluxparticle.jpackage.ZipDirectory.ZIP64_LOCATOR_SIZE;
+import static java.util.stream.Collectors.toCollection;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class JarPatcher {
+
+    static final String MODULE_INFO = "module-info.class";
+
+    private static final int VERSION = 20;
+
+    private static final int VERSION_ZIP64 = 45;
+
+    private static final int ZIP64_EXTRA = 0x0001;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private static final int FLAG_UTF8 = 0x800;
+
+    private JarPatcher() {
+    }
+
+    /**
+     * Writes a copy of {@code inputJar} with an additional {@code module-info.class}. The existing entries and the
+     * central directory are copied byte by byte without inflating anything, only the new entry is compressed.
+     * Jars that already contain one of the descriptors are rewritten by {@link #patchStream}.
+     */
+    static void patch(Path inputJar, byte[] moduleInfo, Path outputJar) throws IOException {
+        patch(inputJar, descriptors(moduleInfo), outputJar);
+    }
+
+    /**
+     * Like {@link #patch(Path, byte[], Path)} with several module descriptors, e.g. the versioned ones of a
+     * multi-release jar.
+     *
+     * @param descriptors the content of the descriptors by entry name
+     */
+    static void patch(Path inputJar, SortedMap<String, byte[]> descriptors, Path outputJar) throws IOException {
+        if (!patchRaw(inputJar, descriptors, outputJar)) {
+            patchStream(inputJar, descriptors, outputJar);
+        }
+    }
+
+    private static boolean patchRaw(Path inputJar, SortedMap<String, byte[]> descriptors, Path outputJar) throws IOException {
+        try (FileChannel in = FileChannel.open(inputJar, StandardOpenOption.READ)) {
+            ZipDirectory directory = ZipDirectory.read(in);
+
+            if (directory.getEntries().stream().anyMatch(e -> descriptors.containsKey(e.getName()))) {
+                return false;
+            }
+
+            long entriesEnd = directory.getCentralDirectoryOffset();
+            // the prefix is copied along, the offsets written to the zip are relative to its end
+            long prefixLength = directory.getPrefixLength();
+
+            List<byte[]> names = new ArrayList<>();
+            List<byte[]> datas = new ArrayList<>();
+            List<Long> offsets = new ArrayList<>();
+            long centralDirectoryOffset = entriesEnd;
+            for (Map.Entry<String, byte[]> descriptor : descriptors.entrySet()) {
+                byte[] name = descriptor.getKey().getBytes(StandardCharsets.UTF_8);
+                byte[] data = deflate(descriptor.getValue());
+                names.add(name);
+                datas.add(data);
+                offsets.add(centralDirectoryOffset - prefixLength);
+                centralDirectoryOffset += LOCAL_HEADER_SIZE + name.length + data.length;
+            }
+            centralDirectoryOffset -= prefixLength;
+
+            int time = dosTime(System.currentTimeMillis());
+
+            try (FileChannel out = FileChannel.open(outputJar, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                long position = 0;
+                while (position < entriesEnd) {
+                    position += in.transferTo(position, entriesEnd - position, out);
+                }
+
+                int i = 0;
+                for (byte[] moduleInfo : descriptors.values()) {
+                    byte[] name = names.get(i);
+                    byte[] data = datas.get(i);
+                    i++;
+
+                    ByteBuffer local = ByteBuffer.allocate(LOCAL_HEADER_SIZE + name.length).order(ByteOrder.LITTLE_ENDIAN);
+                    local.putInt(LOCAL_HEADER);
+                    local.putShort((short) VERSION);
+                    local.putShort((short) FLAG_UTF8);
+                    local.putShort((short) DEFLATED);
+                    local.putInt(time);
+                    local.putInt(crc(moduleInfo));
+                    local.putInt(data.length);
+                    local.putInt(moduleInfo.length);
+                    local.putShort((short) name.length);
+                    local.putShort((short) 0);
+                    local.put(name);
+                    writeFully(out, local.flip());
+                    writeFully(out, ByteBuffer.wrap(data));
+                }
+
+                long centralDirectorySize = 0;
+                for (ZipDirectory.Entry entry : directory.getEntries()) {
+                    centralDirectorySize += writeFully(out, directory.centralRecord(entry));
+                }
+
+                i = 0;
+                for (byte[] moduleInfo : descriptors.values()) {
+                    byte[] name = names.get(i);
+                    byte[] data = datas.get(i);
+                    long offset = offsets.get(i);
+                    i++;
+
+                    // only the offset of a descriptor can exceed 4 GB, it moves into a zip64 extra field then
+                    boolean zip64Offset = offset >= ZIP64_MAGIC;
+                    int extraLength = zip64Offset ? 12 : 0;
+
+                    ByteBuffer central = ByteBuffer.allocate(CENTRAL_HEADER_SIZE + name.length + extraLength).order(ByteOrder.LITTLE_ENDIAN);
+                    central.putInt(CENTRAL_HEADER);
+                    central.putShort((short) (zip64Offset ? VERSION_ZIP64 : VERSION));
+                    central.putShort((short) (zip64Offset ? VERSION_ZIP64 : VERSION));
+                    central.putShort((short) FLAG_UTF8);
+                    central.putShort((short) DEFLATED);
+                    central.putInt(time);
+                    central.putInt(crc(moduleInfo));
+                    central.putInt(data.length);
+                    central.putInt(moduleInfo.length);
+                    central.putShort((short) name.length);
+                    central.putShort((short) extraLength);
+                    central.putShort((short) 0);
+                    central.putShort((short) 0);
+                    central.putShort((short) 0);
+                    central.putInt(0);
+                    central.putInt((int) Math.min(offset, ZIP64_MAGIC));
+                    central.put(name);
+                    if (zip64Offset) {
+                        central.putShort((short) ZIP64_EXTRA);
+                        central.putShort((short) 8);
+                        central.putLong(offset);
+                    }
+                    centralDirectorySize += writeFully(out, central.flip());
+                }
+
+                long count = directory.getEntries().size() + descriptors.size();
+                boolean zip64 = directory.isZip64()
+                        || count >= ZIP64_MAGIC_COUNT
+                        || centralDirectorySize >= ZIP64_MAGIC
+                        || centralDirectoryOffset >= ZIP64_MAGIC;
+
+                if (zip64) {
+                    long zip64EndOffset = centralDirectoryOffset + centralDirectorySize;
+
+                    ByteBuffer zip64End = ByteBuffer.allocate(ZIP64_END_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                    zip64End.putInt(ZIP64_END_HEADER);
+                    zip64End.putLong(ZIP64_END_HEADER_SIZE - 12);
+                    zip64End.putShort((short) VERSION_ZIP64);
+                    zip64End.putShort((short) VERSION_ZIP64);
+                    zip64End.putInt(0);
+                    zip64End.putInt(0);
+                    zip64End.putLong(count);
+                    zip64End.putLong(count);
+                    zip64End.putLong(centralDirectorySize);
+                    zip64End.putLong(centralDirectoryOffset);
+                    writeFully(out, zip64End.flip());
+
+                    ByteBuffer locator = ByteBuffer.allocate(ZIP64_LOCATOR_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                    locator.putInt(ZIP64_LOCATOR);
+                    locator.putInt(0);
+                    locator.putLong(zip64EndOffset);
+                    locator.putInt(1);
+                    writeFully(out, locator.flip());
+                }
+
+                ByteBuffer end = ByteBuffer.allocate(END_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                end.putInt(END_HEADER);
+                end.putShort((short) 0);
+                end.putShort((short) 0);
+                end.putShort((short) Math.min(count, ZIP64_MAGIC_COUNT));
+                end.putShort((short) Math.min(count, ZIP64_MAGIC_COUNT));
+                end.putInt((int) Math.min(centralDirectorySize, ZIP64_MAGIC));
+                end.putInt((int) Math.min(centralDirectoryOffset, ZIP64_MAGIC));
+                end.putShort((short) 0);
+                writeFully(out, end.flip());
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes a copy of {@code inputJar} with additional module descriptors that only depends on the names and contents
+     * of the entries: the manifest comes first, all other entries are sorted by name, every entry gets
+     * {@code entryTime} and neither extra fields nor file attributes are copied.
+     *
+     * @param descriptors the content of the module descriptors by entry name
+     * @param entryTime   the time of all entries, see {@link FileUtils#entryTime}
+     */
+    static void patchReproducible(Path inputJar, SortedMap<String, byte[]> descriptors, Path outputJar, long entryTime) throws IOException {
+        try (JarOutputStream targetStream = new JarOutputStream(new FileOutputStream(outputJar.toString()));
+             JarFile jarFile = new JarFile(inputJar.toString())) {
+            List<String> names = jarFile.stream()
+                    .map(JarEntry::getName)
+                    .filter(name -> !descriptors.containsKey(name))
+                    .collect(toCollection(ArrayList::new));
+            names.addAll(descriptors.keySet());
+            names.sort(Comparator.comparing(JarPatcher::sortKey));
+
+            for (String name : names) {
+                byte[] descriptor = descriptors.get(name);
+                if (descriptor != null) {
+                    writeEntry(targetStream, name, descriptor, entryTime);
+                    continue;
+                }
+
+                JarEntry copy = new JarEntry(name);
+                copy.setTime(entryTime);
+                targetStream.putNextEntry(copy);
+
+                if (!name.endsWith("/")) {
+                    try (InputStream stream = jarFile.getInputStream(jarFile.getJarEntry(name))) {
+                        stream.transferTo(targetStream);
+                    }
+                }
+
+                targetStream.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * The order of the reproducible entries: {@code META-INF/}, the manifest, the rest of {@code META-INF}, the
+     * module descriptor and all other entries by name.
+     */
+    static String sortKey(String name) {
+        if (name.equals("META-INF/")) {
+            return "0";
+        }
+        if (name.equalsIgnoreCase(JarFile.MANIFEST_NAME)) {
+            return "1";
+        }
+        if (name.startsWith("META-INF/")) {
+            return "2" + name;
+        }
+        if (name.equals(MODULE_INFO)) {
+            return "3";
+        }
+        return "3" + name;
+    }
+
+    private static void writeEntry(JarOutputStream targetStream, String name, byte[] content, long time) throws IOException {
+        JarEntry entry = new JarEntry(name);
+        entry.setTime(time);
+        targetStream.putNextEntry(entry);
+        targetStream.write(content);
+        targetStream.closeEntry();
+    }
+
+    /**
+     * Writes a copy of {@code inputJar} with an additional {@code module-info.class} by inflating and deflating
+     * every entry.
+     */
+    static void patchStream(Path inputJar, byte[] moduleInfo, Path outputJar) throws IOException {
+        patchStream(inputJar, descriptors(moduleInfo), outputJar);
+    }
+
+    private static void patchStream(Path inputJar, SortedMap<String, byte[]> descriptors, Path outputJar) throws IOException {
+        try (JarOutputStream targetStream = new JarOutputStream(new FileOutputStream(outputJar.toString()));
+             JarFile jarFile = new JarFile(inputJar.toString())) {
+            for (Map.Entry<String, byte[]> descriptor : descriptors.entrySet()) {
+                JarEntry entry = new JarEntry(descriptor.getKey());
+                targetStream.putNextEntry(entry);
+                targetStream.write(descriptor.getValue());
+                targetStream.closeEntry();
+            }
+
+            Iterator<JarEntry> iterator = jarFile.entries().asIterator();
+            while (iterator.hasNext()) {
+                JarEntry entry = iterator.next();
+                String name = entry.getName();
+
+                if (descriptors.containsKey(name)) {
+                    continue;
+                }
+
+                JarEntry copy = new JarEntry(name);
+                copy.setTime(entry.getTime());
+                targetStream.putNextEntry(copy);
+
+                if (!name.endsWith("/")) {
+                    try (InputStream stream = jarFile.getInputStream(entry)) {
+                        stream.transferTo(targetStream);
+                    }
+                }
+
+                targetStream.closeEntry();
+            }
+        }
+    }
+
+    private static SortedMap<String, byte[]> descriptors(byte[] moduleInfo) {
+        SortedMap<String, byte[]> descriptors = new TreeMap<>();
+        descriptors.put(MODULE_INFO, moduleInfo);
+        return descriptors;
+    }
+
+    private static int crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            byte[] buffer = new byte[bytes.length + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static int dosTime(long millis) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (time.getYear() - 1980) << 25
+                | time.getMonthValue() << 21
+                | time.getDayOfMonth() << 16
+                | time.getHour() << 11
+                | time.getMinute() << 5
+                | time.getSecond() >> 1;
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        int n = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        return n;
+    }
+
+}
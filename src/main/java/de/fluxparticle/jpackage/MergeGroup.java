@@ -0,0 +1,83 @@
+package de.fluxparticle.jpackage;
+
+import org.apache.maven.artifact.Artifact;
+
+import java.lang.module.ModuleDescriptor;
+import java.util.List;
+
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+public class MergeGroup {
+
+    /**
+     * The name of the merged module.
+     */
+    private String name;
+
+    /**
+     * The artifacts of the group as {@code groupId:artifactId}, {@code *} matches any characters in both parts.
+     */
+    private List<String> includes;
+
+    private List<ArtifactPattern> patterns;
+
+    public MergeGroup() {
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the name is no valid module name or an include is invalid
+     */
+    void check() {
+        if (name == null) {
+            throw new IllegalArgumentException("merge group without name");
+        }
+        ModuleDescriptor.newModule(name);
+        patterns();
+    }
+
+    boolean matches(Artifact artifact) {
+        for (ArtifactPattern pattern : patterns()) {
+            if (pattern.matches(artifact)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<ArtifactPattern> patterns() {
+        if (patterns == null) {
+            patterns = includes != null
+                    ? includes.stream().map(ArtifactPattern::parse).collect(toList())
+                    : emptyList();
+        }
+        return patterns;
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + (includes != null ? includes : emptyList());
+    }
+
+}
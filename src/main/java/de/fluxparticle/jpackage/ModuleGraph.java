@@ -0,0 +1,180 @@
+package de.fluxparticle.jpackage;
+
+import java.lang.module.Configuration;
+import java.lang.module.FindException;
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReference;
+import java.lang.module.ResolutionException;
+import java.lang.module.ResolvedModule;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class ModuleGraph {
+
+    private final Configuration configuration;
+
+    private ModuleGraph(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * Resolves {@code roots} against the modules of the running JDK and {@code modulePath} the way jlink does.
+     *
+     * @throws FindException       if a module is missing or a module path element is broken
+     * @throws ResolutionException if the modules do not form a valid graph
+     */
+    static ModuleGraph resolve(List<String> modulePath, Set<String> roots) {
+        ModuleFinder finder = ModuleFinder.compose(
+                ModuleFinder.ofSystem(),
+                ModuleFinder.of(modulePath.stream().map(Path::of).toArray(Path[]::new))
+        );
+
+        return new ModuleGraph(Configuration.empty().resolve(finder, ModuleFinder.of(), roots));
+    }
+
+    /**
+     * Checks that {@code modulePath} resolves for {@code mainModule} the way jlink and the launcher resolve it: no module
+     * found twice, all required modules present, no cycles and no package in more than one module of the application,
+     * as they are all defined to the same class loader.
+     *
+     * @return a description of every problem, naming the module path elements involved
+     */
+    static List<String> validate(List<String> modulePath, String mainModule) {
+        List<String> problems = new ArrayList<>();
+
+        Map<String, List<Path>> locations = new TreeMap<>();
+        Map<String, ModuleDescriptor> descriptors = new TreeMap<>();
+        for (String element : new LinkedHashSet<>(modulePath)) {
+            Path path = Path.of(element);
+            if (!Files.exists(path)) {
+                continue;
+            }
+            try {
+                for (ModuleReference reference : ModuleFinder.of(path).findAll()) {
+                    locations.computeIfAbsent(reference.descriptor().name(), name -> new ArrayList<>()).add(path);
+                    descriptors.putIfAbsent(reference.descriptor().name(), reference.descriptor());
+                }
+            } catch (FindException e) {
+                problems.add(element + ": " + e.getMessage());
+            }
+        }
+
+        locations.forEach((name, paths) -> {
+            if (paths.size() > 1) {
+                problems.add("Module " + name + " found more than once: "
+                        + paths.stream().map(Path::toString).collect(joining(", ")));
+            }
+        });
+
+        if (!problems.isEmpty()) {
+            return problems;
+        }
+
+        // if the graph does not resolve, split packages of all modules are reported, they are a common cause
+        Collection<ModuleDescriptor> modules = descriptors.values();
+        try {
+            ModuleGraph graph = resolve(modulePath, Set.of(mainModule));
+            modules = graph.getModuleNames().stream()
+                    .filter(descriptors::containsKey)
+                    .map(descriptors::get)
+                    .collect(toList());
+        } catch (FindException | ResolutionException e) {
+            problems.add(withLocations(e.getMessage(), locations));
+        }
+
+        Map<String, String> packages = new HashMap<>();
+        Map<String, SortedSet<String>> splitPackages = new TreeMap<>();
+        for (ModuleDescriptor module : modules) {
+            for (String packageName : module.packages()) {
+                String other = packages.putIfAbsent(packageName, module.name());
+                if (other != null) {
+                    splitPackages.computeIfAbsent(other + " " + module.name(), pair -> new TreeSet<>()).add(packageName);
+                }
+            }
+        }
+
+        splitPackages.forEach((pair, packageNames) -> {
+            String[] names = pair.split(" ");
+            problems.add("Modules " + names[0] + " (" + locations.get(names[0]).get(0) + ") and "
+                    + names[1] + " (" + locations.get(names[1]).get(0) + ") contain the same packages: "
+                    + packageNames.stream().limit(5).collect(joining(", "))
+                    + (packageNames.size() > 5 ? " and " + (packageNames.size() - 5) + " more" : ""));
+        });
+
+        return problems;
+    }
+
+    private static String withLocations(String message, Map<String, List<Path>> locations) {
+        StringBuilder sb = new StringBuilder(message);
+        locations.forEach((name, paths) -> {
+            if (Pattern.compile("(?<![\\w.])" + Pattern.quote(name) + "(?![\\w.])").matcher(message).find()) {
+                sb.append("\n    ").append(name).append(": ").append(paths.get(0));
+            }
+        });
+        return sb.toString();
+    }
+
+    /**
+     * The name of the module of a {@code module/mainClass} or {@code module} specification.
+     */
+    static String mainModule(String mainClass) {
+        int slash = mainClass.indexOf('/');
+        return slash < 0 ? mainClass : mainClass.substring(0, slash);
+    }
+
+    Set<ResolvedModule> getModules() {
+        return configuration.modules();
+    }
+
+    SortedSet<String> getModuleNames() {
+        SortedSet<String> names = new TreeSet<>();
+        for (ResolvedModule module : configuration.modules()) {
+            names.add(module.name());
+        }
+        return names;
+    }
+
+    /**
+     * The jar or directory a module was found in, empty for modules of the JDK.
+     */
+    static Optional<Path> location(ResolvedModule module) {
+        ModuleReference reference = module.reference();
+        return reference.location()
+                .filter(uri -> uri.getScheme().equals("file"))
+                .map(Path::of);
+    }
+
+}
@@ -0,0 +1,230 @@
+package de.fluxparticle.jpackage;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.expr.Name;
+import com.github.javaparser.ast.modules.ModuleDeclaration;
+import com.github.javaparser.ast.modules.ModuleExportsDirective;
+import com.github.javaparser.ast.modules.ModuleProvidesDirective;
+import com.github.javaparser.ast.modules.ModuleRequiresDirective;
+import com.github.javaparser.ast.modules.ModuleUsesDirective;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.ModuleVisitor;
+
+import java.io.IOException;
+import java.lang.module.ModuleDescriptor;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.UnaryOperator;
+
+import static com.github.javaparser.ParserConfiguration.LanguageLevel.JAVA_9;
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
+import static org.objectweb.asm.Opcodes.ACC_MANDATED;
+import static org.objectweb.asm.Opcodes.ACC_MODULE;
+import static org.objectweb.asm.Opcodes.ACC_SYNTHETIC;
+import static org.objectweb.asm.Opcodes.V9;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class ModuleInfo {
+
+    static {
+        StaticJavaParser.getConfiguration().setLanguageLevel(JAVA_9);
+    }
+
+    private final String name;
+
+    private final SortedSet<String> requires = new TreeSet<>();
+
+    private final SortedMap<String, List<String>> exports = new TreeMap<>();
+
+    private final SortedSet<String> uses = new TreeSet<>();
+
+    private final SortedMap<String, List<String>> provides = new TreeMap<>();
+
+    ModuleInfo(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Reads a {@code module-info.java} as generated by jdeps.
+     */
+    static ModuleInfo parse(Path moduleInfo) throws IOException {
+        ModuleDeclaration module = StaticJavaParser.parse(moduleInfo).getModule().get();
+
+        ModuleInfo info = new ModuleInfo(module.getNameAsString());
+
+        for (ModuleRequiresDirective requires : module.findAll(ModuleRequiresDirective.class)) {
+            info.addRequires(requires.getName().asString());
+        }
+
+        for (ModuleExportsDirective export : module.findAll(ModuleExportsDirective.class)) {
+            info.addExports(export.getNameAsString(), export.getModuleNames().stream()
+                    .map(Name::toString)
+                    .collect(toList()));
+        }
+
+        for (ModuleUsesDirective uses : module.findAll(ModuleUsesDirective.class)) {
+            info.addUses(uses.getNameAsString());
+        }
+
+        for (ModuleProvidesDirective provides : module.findAll(ModuleProvidesDirective.class)) {
+            for (Name with : provides.getWith()) {
+                info.addProvides(provides.getNameAsString(), with.toString());
+            }
+        }
+
+        return info;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Set<String> getRequires() {
+        return requires;
+    }
+
+    Map<String, List<String>> getExports() {
+        return exports;
+    }
+
+    Set<String> getUses() {
+        return uses;
+    }
+
+    Map<String, List<String>> getProvides() {
+        return provides;
+    }
+
+    void addRequires(String module) {
+        if (!module.equals("java.base") && !module.equals(name)) {
+            requires.add(module);
+        }
+    }
+
+    void addExports(String packageName, List<String> targets) {
+        List<String> exportTargets = exports.computeIfAbsent(packageName, p -> new ArrayList<>());
+        for (String target : targets) {
+            if (!exportTargets.contains(target)) {
+                exportTargets.add(target);
+            }
+        }
+        exportTargets.sort(null);
+    }
+
+    void addUses(String service) {
+        uses.add(service);
+    }
+
+    void addProvides(String service, String provider) {
+        List<String> providers = provides.computeIfAbsent(service, s -> new ArrayList<>());
+        if (!providers.contains(provider)) {
+            providers.add(provider);
+        }
+    }
+
+    /**
+     * Adds the directives of {@code descriptor} with the module names mapped by {@code rename}. Exports that are only
+     * qualified to this module are left out.
+     */
+    void add(ModuleDescriptor descriptor, UnaryOperator<String> rename) {
+        for (ModuleDescriptor.Requires require : descriptor.requires()) {
+            addRequires(rename.apply(require.name()));
+        }
+
+        for (ModuleDescriptor.Exports export : descriptor.exports()) {
+            if (!export.isQualified()) {
+                addExports(export.source(), emptyList());
+                continue;
+            }
+            List<String> targets = export.targets().stream()
+                    .map(rename)
+                    .filter(target -> !target.equals(name))
+                    .collect(toList());
+            if (!targets.isEmpty()) {
+                addExports(export.source(), targets);
+            }
+        }
+
+        for (String service : descriptor.uses()) {
+            addUses(service);
+        }
+
+        for (ModuleDescriptor.Provides provide : descriptor.provides()) {
+            for (String provider : provide.providers()) {
+                addProvides(provide.service(), provider);
+            }
+        }
+    }
+
+    /**
+     * Compiles the descriptor to the content of a {@code module-info.class}.
+     */
+    byte[] toByteArray() {
+        ClassWriter classWriter = new ClassWriter(0);
+        classWriter.visit(V9, ACC_MODULE, "module-info", null, null, null);
+
+        ModuleVisitor mv = classWriter.visitModule(name, ACC_SYNTHETIC, null);
+
+        for (String module : requires) {
+            mv.visitRequire(module, 0, null);
+        }
+
+        for (Map.Entry<String, List<String>> export : exports.entrySet()) {
+            List<String> targets = export.getValue();
+            mv.visitExport(
+                    internalName(export.getKey()),
+                    0,
+                    targets.isEmpty() ? null : targets.toArray(String[]::new)
+            );
+        }
+
+        for (String service : uses) {
+            mv.visitUse(internalName(service));
+        }
+
+        for (Map.Entry<String, List<String>> provide : provides.entrySet()) {
+            mv.visitProvide(
+                    internalName(provide.getKey()),
+                    provide.getValue().stream()
+                            .map(ModuleInfo::internalName)
+                            .toArray(String[]::new)
+            );
+        }
+
+        mv.visitRequire("java.base", ACC_MANDATED, null);
+        mv.visitEnd();
+
+        classWriter.visitEnd();
+
+        return classWriter.toByteArray();
+    }
+
+    private static String internalName(String name) {
+        return name.replace('.', '/');
+    }
+
+}
@@ -0,0 +1,440 @@
+package de.fluxparticle.jpackage;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.module.FindException;
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReference;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.UnaryOperator;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class ModuleMerger {
+
+    private static final String PREFIX_SERVICES = "META-INF/services/";
+
+    private static final String INDEX_LIST = "META-INF/INDEX.LIST";
+
+    private static final String TEMP_PREFIX = ".tmp-";
+
+    private final Path dir;
+
+    private final long entryTime;
+
+    private final Log log;
+
+    /**
+     * @param dir       the directory the merged and the rewritten jars are written to
+     * @param entryTime the time of all entries of the written jars
+     */
+    ModuleMerger(Path dir, long entryTime, Log log) {
+        this.dir = dir;
+        this.entryTime = entryTime;
+        this.log = log;
+    }
+
+    /**
+     * Merges the jars of each group into a single module. A jar stays a module of its own if it is multi-release or
+     * signed, if one of its packages is already in another jar of the group, if it is required by a module whose
+     * descriptor cannot be rewritten or if merging it would create a cycle. Groups with less than two jars are not
+     * merged. Fixed jars that require a merged jar get a rewritten copy that requires the merged module instead.
+     *
+     * @param modulePath the module path with the fixed jars
+     * @param fixed      the fixed jars of the module path, only their descriptors are rewritten
+     * @param groups     the jars to merge by the name of the merged module
+     * @return the module path with the merged modules at the place of their first jar
+     */
+    List<String> merge(List<String> modulePath, Set<Path> fixed, Map<String, List<Path>> groups) throws IOException {
+        Map<String, ModuleDescriptor> descriptors = new LinkedHashMap<>();
+        Map<String, ModuleDescriptor> modules = new HashMap<>();
+        for (String element : modulePath) {
+            ModuleDescriptor descriptor = descriptor(Path.of(element));
+            if (descriptor != null) {
+                descriptors.put(element, descriptor);
+                modules.putIfAbsent(descriptor.name(), descriptor);
+            }
+        }
+
+        Map<String, String> groupOf = new HashMap<>();
+        for (Entry<String, List<Path>> group : groups.entrySet()) {
+            if (modules.containsKey(group.getKey())) {
+                log.warn("Not merged: module " + group.getKey() + " exists already");
+                continue;
+            }
+
+            Map<String, String> packages = new HashMap<>();
+            for (Path jar : group.getValue()) {
+                ModuleDescriptor descriptor = descriptors.get(jar.toString());
+                if (descriptor == null || !fixed.contains(jar)) {
+                    continue;
+                }
+                String reason = addPackages(jar, descriptor.name(), packages);
+                if (reason != null) {
+                    log.info("Not merged into " + group.getKey() + ": " + jar.getFileName() + " (" + reason + ")");
+                    continue;
+                }
+                groupOf.put(descriptor.name(), group.getKey());
+            }
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            Map<String, Integer> sizes = new HashMap<>();
+            for (String group : groupOf.values()) {
+                sizes.merge(group, 1, Integer::sum);
+            }
+            if (groupOf.values().removeIf(group -> sizes.get(group) < 2)) {
+                changed = true;
+                continue;
+            }
+
+            for (Entry<String, ModuleDescriptor> entry : descriptors.entrySet()) {
+                ModuleDescriptor descriptor = entry.getValue();
+                String group = groupOf.get(descriptor.name());
+                for (ModuleDescriptor.Requires require : descriptor.requires()) {
+                    String required = groupOf.get(require.name());
+                    if (required == null || required.equals(group)) {
+                        continue;
+                    }
+
+                    String reason = null;
+                    if (!isRewritable(Path.of(entry.getKey()), fixed)) {
+                        reason = "required by " + descriptor.name();
+                    } else if (reachable(required, groupOf, modules).contains(group != null ? group : descriptor.name())) {
+                        reason = "cycle with " + descriptor.name();
+                    }
+                    if (reason != null) {
+                        log.info("Not merged into " + required + ": " + require.name() + " (" + reason + ")");
+                        groupOf.remove(require.name());
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        UnaryOperator<String> rename = module -> groupOf.getOrDefault(module, module);
+
+        Files.createDirectories(dir);
+        Set<Path> written = new HashSet<>();
+        Map<String, String> replacements = new HashMap<>();
+        List<List<String>> lines = new ArrayList<>();
+        lines.add(Arrays.asList("merged:", "jars:"));
+
+        for (String group : new TreeSet<>(groupOf.values())) {
+            List<String> members = descriptors.entrySet().stream()
+                    .filter(entry -> group.equals(groupOf.get(entry.getValue().name())))
+                    .map(Entry::getKey)
+                    .collect(toList());
+
+            ModuleInfo info = new ModuleInfo(group);
+            for (String member : members) {
+                info.add(descriptors.get(member), rename);
+            }
+
+            Path jar = dir.resolve(group + ".jar");
+            write(jar, tmp -> mergeJars(members, info, tmp));
+            written.add(jar);
+
+            for (String member : members) {
+                replacements.put(member, member.equals(members.get(0)) ? jar.toString() : "");
+                lines.add(Arrays.asList(group, Path.of(member).getFileName().toString()));
+            }
+        }
+
+        for (Entry<String, ModuleDescriptor> entry : descriptors.entrySet()) {
+            ModuleDescriptor descriptor = entry.getValue();
+            if (groupOf.containsKey(descriptor.name())
+                    || descriptor.requires().stream().noneMatch(require -> groupOf.containsKey(require.name()))) {
+                continue;
+            }
+
+            ModuleInfo info = new ModuleInfo(descriptor.name());
+            info.add(descriptor, rename);
+            SortedMap<String, byte[]> moduleInfo = new TreeMap<>();
+            moduleInfo.put(JarPatcher.MODULE_INFO, info.toByteArray());
+
+            Path source = Path.of(entry.getKey());
+            Path jar = dir.resolve(source.getFileName());
+            write(jar, tmp -> JarPatcher.patchReproducible(source, moduleInfo, tmp, entryTime));
+            written.add(jar);
+            replacements.put(entry.getKey(), jar.toString());
+        }
+
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!written.contains(file)) {
+                    Files.delete(file);
+                }
+            }
+        }
+
+        if (lines.size() > 1) {
+            BuildImage.printLines(log, lines);
+        }
+
+        List<String> result = new ArrayList<>();
+        for (String element : modulePath) {
+            String replacement = replacements.getOrDefault(element, element);
+            if (!replacement.isEmpty()) {
+                result.add(replacement);
+            }
+        }
+        return result;
+    }
+
+    private static ModuleDescriptor descriptor(Path element) throws IOException {
+        if (element.getFileName().toString().endsWith(".jar")) {
+            return JarMetadata.of(element).getDescriptor();
+        }
+        try {
+            Set<ModuleReference> references = ModuleFinder.of(element).findAll();
+            return references.size() == 1 ? references.iterator().next().descriptor() : null;
+        } catch (FindException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Only the single descriptor of a fixed jar that is not multi-release can be rewritten.
+     */
+    private static boolean isRewritable(Path element, Set<Path> fixed) throws IOException {
+        return fixed.contains(element) && !JarMetadata.of(element).isMultiRelease();
+    }
+
+    /**
+     * Adds the packages of {@code jar} if the jar can be merged.
+     *
+     * @param packages the packages of the jars of the group so far and the modules they belong to
+     * @return the reason why the jar cannot be merged or {@code null}
+     */
+    private static String addPackages(Path jar, String module, Map<String, String> packages) throws IOException {
+        if (JarMetadata.of(jar).isMultiRelease()) {
+            return "multi-release";
+        }
+
+        Set<String> jarPackages = new HashSet<>();
+        try (FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+            for (ZipDirectory.Entry entry : ZipDirectory.read(channel).getEntries()) {
+                String name = entry.getName();
+                if (name.startsWith("META-INF/")) {
+                    if (isSignature(name)) {
+                        return "signed";
+                    }
+                    continue;
+                }
+
+                int slash = name.lastIndexOf('/');
+                if (!entry.isDirectory() && slash > 0) {
+                    jarPackages.add(name.substring(0, slash).replace('/', '.'));
+                }
+            }
+        }
+
+        for (String packageName : new TreeSet<>(jarPackages)) {
+            String other = packages.get(packageName);
+            if (other != null) {
+                return "package " + packageName + " is also in " + other;
+            }
+        }
+
+        for (String packageName : jarPackages) {
+            packages.put(packageName, module);
+        }
+        return null;
+    }
+
+    private static boolean isSignature(String name) {
+        if (name.indexOf('/', "META-INF/".length()) >= 0) {
+            return false;
+        }
+        String upperCase = name.toUpperCase();
+        return upperCase.endsWith(".SF") || upperCase.endsWith(".RSA") || upperCase.endsWith(".DSA") || upperCase.endsWith(".EC");
+    }
+
+    /**
+     * All nodes that {@code group} requires directly or indirectly in the module graph after merging, where each group
+     * is a single node with the name of the group and each module that is not merged a node with its own name.
+     */
+    private static Set<String> reachable(String group, Map<String, String> groupOf, Map<String, ModuleDescriptor> modules) {
+        Map<String, List<String>> members = new HashMap<>();
+        for (Entry<String, String> member : groupOf.entrySet()) {
+            members.computeIfAbsent(member.getValue(), g -> new ArrayList<>()).add(member.getKey());
+        }
+
+        Set<String> visited = new HashSet<>();
+        Set<String> reachable = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>(List.of(group));
+        while (!pending.isEmpty()) {
+            String node = pending.poll();
+            if (!visited.add(node)) {
+                continue;
+            }
+            for (String module : members.getOrDefault(node, List.of(node))) {
+                ModuleDescriptor descriptor = modules.get(module);
+                if (descriptor == null) {
+                    continue;
+                }
+                for (ModuleDescriptor.Requires require : descriptor.requires()) {
+                    String required = groupOf.getOrDefault(require.name(), require.name());
+                    reachable.add(required);
+                    pending.add(required);
+                }
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * Writes one jar with the entries of all {@code jars}: service files are concatenated, the manifest and the
+     * descriptors are replaced and of other entries with the same name the first wins, which is logged if their
+     * contents differ.
+     */
+    private void mergeJars(List<String> jars, ModuleInfo info, Path output) throws IOException {
+        List<ZipFile> zipFiles = new ArrayList<>();
+        try {
+            Map<String, ZipFile> entries = new HashMap<>();
+            Map<String, ByteArrayOutputStream> services = new HashMap<>();
+            for (String jar : jars) {
+                ZipFile zipFile = new ZipFile(jar);
+                zipFiles.add(zipFile);
+
+                Iterator<? extends ZipEntry> iterator = zipFile.entries().asIterator();
+                while (iterator.hasNext()) {
+                    ZipEntry entry = iterator.next();
+                    String name = entry.getName();
+                    if (name.equals(JarPatcher.MODULE_INFO) || name.equalsIgnoreCase(JarFile.MANIFEST_NAME) || name.equalsIgnoreCase(INDEX_LIST)) {
+                        continue;
+                    }
+
+                    if (name.startsWith(PREFIX_SERVICES) && !entry.isDirectory() && name.indexOf('/', PREFIX_SERVICES.length()) < 0) {
+                        ByteArrayOutputStream content = services.computeIfAbsent(name, n -> new ByteArrayOutputStream());
+                        try (InputStream in = zipFile.getInputStream(entry)) {
+                            in.transferTo(content);
+                        }
+                        content.write('\n');
+                        continue;
+                    }
+
+                    ZipFile first = entries.putIfAbsent(name, zipFile);
+                    if (first != null && !entry.isDirectory()) {
+                        ZipEntry kept = first.getEntry(name);
+                        if (kept.getCrc() != entry.getCrc() || kept.getSize() != entry.getSize()) {
+                            log.warn("Duplicate entry " + name + " of " + Path.of(jar).getFileName()
+                                    + " not merged into " + info.getName() + ", kept the one of " + Path.of(first.getName()).getFileName());
+                        }
+                    }
+                }
+            }
+
+            Manifest manifest = new Manifest();
+            manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+
+            List<String> names = new ArrayList<>(entries.keySet());
+            names.addAll(services.keySet());
+            names.add(JarFile.MANIFEST_NAME);
+            names.add(JarPatcher.MODULE_INFO);
+            names.sort(Comparator.comparing(JarPatcher::sortKey));
+
+            try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(output))) {
+                for (String name : names) {
+                    JarEntry entry = new JarEntry(name);
+                    entry.setTime(entryTime);
+                    out.putNextEntry(entry);
+
+                    if (name.equals(JarFile.MANIFEST_NAME)) {
+                        manifest.write(out);
+                    } else if (name.equals(JarPatcher.MODULE_INFO)) {
+                        out.write(info.toByteArray());
+                    } else if (services.containsKey(name)) {
+                        services.get(name).writeTo(out);
+                    } else if (!name.endsWith("/")) {
+                        ZipFile zipFile = entries.get(name);
+                        try (InputStream in = zipFile.getInputStream(zipFile.getEntry(name))) {
+                            in.transferTo(out);
+                        }
+                    }
+
+                    out.closeEntry();
+                }
+            }
+        } finally {
+            for (ZipFile zipFile : zipFiles) {
+                zipFile.close();
+            }
+        }
+    }
+
+    private interface JarWriter {
+
+        void write(Path jar) throws IOException;
+
+    }
+
+    /**
+     * Writes {@code jar} only if its content changes, so that the image is not rebuilt for an unchanged module path.
+     */
+    private static void write(Path jar, JarWriter writer) throws IOException {
+        Path tmp = jar.resolveSibling(TEMP_PREFIX + jar.getFileName());
+        try {
+            writer.write(tmp);
+            if (!Files.exists(jar) || Files.mismatch(tmp, jar) >= 0) {
+                Files.move(tmp, jar, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+package de.fluxparticle.jpackage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.jar.JarFile;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class MultiRelease {
+
+    /**
+     * The release of the classes outside of {@code META-INF/versions}.
+     */
+    static final int BASE = JarFile.baseVersion().feature();
+
+    private static final String PREFIX_VERSIONS = "META-INF/versions/";
+
+    interface ReleaseTask<T> {
+
+        T run(int release) throws IOException, InterruptedException;
+
+    }
+
+    private MultiRelease() {
+    }
+
+    /**
+     * The releases a module descriptor is needed for when running on the current JDK: {@link #BASE} and, for a
+     * multi-release jar, every version of its {@code META-INF/versions/N} directories up to the current one.
+     */
+    static List<Integer> releases(JarMetadata metadata) {
+        List<Integer> releases = new ArrayList<>();
+        releases.add(BASE);
+        if (metadata.isMultiRelease()) {
+            for (int version : metadata.getVersions()) {
+                if (version > BASE && version <= Runtime.version().feature()) {
+                    releases.add(version);
+                }
+            }
+        }
+        return releases;
+    }
+
+    /**
+     * The name of the module descriptor entry of {@code release}.
+     */
+    static String descriptorName(int release) {
+        return release > BASE ? PREFIX_VERSIONS + release + "/" + JarPatcher.MODULE_INFO : JarPatcher.MODULE_INFO;
+    }
+
+    /**
+     * The directory the files of {@code release} are kept in within the directory of a module, like jdeps
+     * generates them.
+     */
+    static Path directory(Path moduleDir, int release) {
+        return release > BASE ? moduleDir.resolve("versions").resolve(Integer.toString(release)) : moduleDir;
+    }
+
+    /**
+     * The version of an entry in {@code META-INF/versions/N}, {@link #BASE} for all other entries and {@code -1} if
+     * the version cannot be parsed.
+     */
+    static int version(String entryName) {
+        if (!entryName.startsWith(PREFIX_VERSIONS)) {
+            return BASE;
+        }
+        int slash = entryName.indexOf('/', PREFIX_VERSIONS.length());
+        if (slash < 0) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(entryName.substring(PREFIX_VERSIONS.length(), slash));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The name of an entry in {@code META-INF/versions/N} without the prefix.
+     */
+    static String unversionedName(String entryName) {
+        if (!entryName.startsWith(PREFIX_VERSIONS)) {
+            return entryName;
+        }
+        int slash = entryName.indexOf('/', PREFIX_VERSIONS.length());
+        return slash < 0 ? entryName : entryName.substring(slash + 1);
+    }
+
+    /**
+     * Runs {@code task} for all releases, in parallel if there is more than one.
+     */
+    static <T> SortedMap<Integer, T> run(List<Integer> releases, ReleaseTask<T> task) throws IOException, InterruptedException {
+        SortedMap<Integer, T> result = new TreeMap<>();
+        if (releases.size() == 1) {
+            int release = releases.get(0);
+            result.put(release, task.run(release));
+            return result;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(releases.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            Map<Integer, CompletableFuture<T>> futures = new LinkedHashMap<>();
+            for (int release : releases) {
+                futures.put(release, CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return task.run(release);
+                    } catch (IOException | InterruptedException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor));
+            }
+
+            for (Map.Entry<Integer, CompletableFuture<T>> future : futures.entrySet()) {
+                result.put(future.getKey(), future.getValue().get());
+            }
+            return result;
+        } catch (ExecutionException e) {
+            throw FixScheduler.rethrow(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
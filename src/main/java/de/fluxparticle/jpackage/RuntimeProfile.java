@@ -0,0 +1,88 @@
+package de.fluxparticle.jpackage;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+enum RuntimeProfile {
+
+    /**
+     * The smallest runtime: no debug information, compressed resources, no header files, man pages and commands.
+     */
+    MINIMAL(asList("--strip-debug", "--compress=2", "--no-header-files", "--no-man-pages", "--strip-native-commands"),
+            emptyList(), false),
+
+    /**
+     * Uncompressed resources and a CDS archive of the runtime classes, which cost some size but speed up startup.
+     */
+    FAST_STARTUP(asList("--strip-debug", "--no-header-files", "--no-man-pages", "--strip-native-commands"),
+            emptyList(), true),
+
+    /**
+     * Debug information, all service providers of the JDK and the modules and commands to attach a debugger,
+     * profiler or jcmd.
+     */
+    DEBUG(asList("--bind-services", "--no-man-pages"),
+            asList("jdk.jdwp.agent", "jdk.jcmd", "jdk.jfr", "jdk.management.agent"), false);
+
+    private final List<String> jlinkOptions;
+
+    private final List<String> addModules;
+
+    private final boolean cdsArchive;
+
+    RuntimeProfile(List<String> jlinkOptions, List<String> addModules, boolean cdsArchive) {
+        this.jlinkOptions = jlinkOptions;
+        this.addModules = addModules;
+        this.cdsArchive = cdsArchive;
+    }
+
+    /**
+     * @throws IllegalArgumentException for unknown profiles
+     */
+    static RuntimeProfile of(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+
+    List<String> getJlinkOptions() {
+        return jlinkOptions;
+    }
+
+    /**
+     * Modules of the JDK that are added to the modules the application needs.
+     */
+    List<String> getAddModules() {
+        return addModules;
+    }
+
+    /**
+     * {@code true} if the runtime gets a CDS archive of its own classes.
+     */
+    boolean isCdsArchive() {
+        return cdsArchive;
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase().replace('_', '-');
+    }
+
+}
@@ -0,0 +1,221 @@
+package de.fluxparticle.jpackage;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class StartupBenchmark {
+
+    private static final long SAMPLE_MILLIS = 5;
+
+    /**
+     * A single launch of the image.
+     */
+    static class Run {
+
+        private final long nanos;
+
+        private final long peakRssKb;
+
+        Run(long nanos, long peakRssKb) {
+            this.nanos = nanos;
+            this.peakRssKb = peakRssKb;
+        }
+
+        /**
+         * Time from starting the launcher to the marker line or the exit of the application.
+         */
+        long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * The peak resident set size or -1 if the platform does not provide it.
+         */
+        long getPeakRssKb() {
+            return peakRssKb;
+        }
+
+    }
+
+    private final Log log;
+
+    private final AppImage image;
+
+    private final List<String> args;
+
+    private final Pattern marker;
+
+    private final long timeout;
+
+    /**
+     * @param marker  a line of the output that marks the application as started or {@code null} to wait for its exit
+     * @param timeout seconds after which a run is terminated
+     */
+    StartupBenchmark(Log log, AppImage image, List<String> args, Pattern marker, long timeout) {
+        this.log = log;
+        this.image = image;
+        this.args = args;
+        this.marker = marker;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Launches the image once.
+     *
+     * @return the measurements or {@code null} if the run timed out, failed or did not print the marker
+     */
+    Run run() throws IOException, InterruptedException {
+        return run(null);
+    }
+
+    /**
+     * Launches the image once with class loading logged and counts the loaded classes.
+     *
+     * @return the number of loaded classes or -1 if the run did not succeed
+     */
+    long countLoadedClasses(Path logFile) throws IOException, InterruptedException {
+        Files.deleteIfExists(logFile);
+        if (run("-Xlog:class+load=info:file=" + logFile) == null || !Files.exists(logFile)) {
+            return -1;
+        }
+        try (Stream<String> lines = Files.lines(logFile, StandardCharsets.UTF_8)) {
+            return lines.filter(line -> line.contains(" source: ")).count();
+        }
+    }
+
+    private Run run(String javaToolOptions) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(image.getLauncher().toString());
+        command.addAll(args);
+
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+        if (javaToolOptions != null) {
+            builder.environment().put("JAVA_TOOL_OPTIONS", javaToolOptions);
+        } else {
+            builder.environment().remove("JAVA_TOOL_OPTIONS");
+        }
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        process.getOutputStream().close();
+
+        AtomicLong peakRssKb = new AtomicLong(-1);
+        AtomicBoolean timedOut = new AtomicBoolean();
+        Thread sampler = new Thread(() -> sample(process, start, peakRssKb, timedOut), "rss-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+
+        long end = -1;
+        boolean marked = false;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (marker != null && marker.matcher(line).find()) {
+                    end = System.nanoTime();
+                    marked = true;
+                    break;
+                }
+            }
+
+            if (marked) {
+                readPeakRss(process, peakRssKb);
+                terminate(process);
+            } else {
+                process.waitFor();
+                end = System.nanoTime();
+            }
+        } finally {
+            sampler.interrupt();
+            sampler.join();
+        }
+
+        if (timedOut.get()) {
+            log.warn("Terminated " + image.getLauncher().getFileName() + " after " + timeout + "s");
+            return null;
+        }
+        if (marker == null && process.exitValue() != 0) {
+            log.warn(image.getLauncher().getFileName() + " exited with " + process.exitValue());
+            return null;
+        }
+        if (marker != null && !marked) {
+            log.warn(image.getLauncher().getFileName() + " did not print " + marker);
+            return null;
+        }
+
+        return new Run(end - start, peakRssKb.get());
+    }
+
+    /**
+     * Samples the peak RSS while the process is running and terminates it after the timeout.
+     */
+    private void sample(Process process, long start, AtomicLong peakRssKb, AtomicBoolean timedOut) {
+        try {
+            while (process.isAlive()) {
+                readPeakRss(process, peakRssKb);
+                if (System.nanoTime() - start > TimeUnit.SECONDS.toNanos(timeout)) {
+                    timedOut.set(true);
+                    terminate(process);
+                    return;
+                }
+                Thread.sleep(SAMPLE_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            // run is over
+        }
+    }
+
+    /**
+     * Reads the high water mark of the resident set size from {@code /proc}, only available on Linux. The launcher
+     * runs the JVM in its own process.
+     */
+    private static void readPeakRss(Process process, AtomicLong peakRssKb) {
+        Path status = Path.of("/proc", Long.toString(process.pid()), "status");
+        try (Stream<String> lines = Files.lines(status)) {
+            lines.filter(line -> line.startsWith("VmHWM:"))
+                    .map(line -> line.substring("VmHWM:".length()).replace("kB", "").trim())
+                    .mapToLong(Long::parseLong)
+                    .forEach(kb -> peakRssKb.accumulateAndGet(kb, Math::max));
+        } catch (IOException | RuntimeException e) {
+            // not on Linux or the process is gone
+        }
+    }
+
+    private void terminate(Process process) throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(timeout, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            process.waitFor();
+        }
+    }
+
+}
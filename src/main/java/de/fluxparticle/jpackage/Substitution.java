@@ -0,0 +1,119 @@
+package de.fluxparticle.jpackage;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.shared.transfer.artifact.DefaultArtifactCoordinate;
+
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+public class Substitution {
+
+    /**
+     * The groupId of the artifacts to substitute, {@code *} matches any characters.
+     */
+    private String groupId;
+
+    /**
+     * The artifactId of the artifacts to substitute, {@code *} matches any characters. All artifacts of the group if
+     * not set.
+     */
+    private String artifactId;
+
+    /**
+     * The classifier of the modular variant of the same artifact, e.g. {@code modular}.
+     */
+    private String classifier;
+
+    /**
+     * The coordinates of a modular replacement as {@code groupId:artifactId[:extension[:classifier]]:version}. Without
+     * version ({@code groupId:artifactId}) the version of the substituted artifact is used.
+     */
+    private String replacement;
+
+    private ArtifactPattern pattern;
+
+    public Substitution() {
+    }
+
+    Substitution(String groupId, String artifactId, String classifier) {
+        this(groupId, artifactId, classifier, null);
+    }
+
+    Substitution(String groupId, String artifactId, String classifier, String replacement) {
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+        this.classifier = classifier;
+        this.replacement = replacement;
+    }
+
+    boolean matches(Artifact artifact) {
+        if (groupId == null) {
+            return false;
+        }
+        if (pattern == null) {
+            pattern = new ArtifactPattern(groupId, artifactId);
+        }
+        return pattern.matches(artifact);
+    }
+
+    /**
+     * The coordinates of the modular variant of {@code artifact}.
+     *
+     * @throws IllegalArgumentException if the substitution is invalid
+     */
+    DefaultArtifactCoordinate coordinate(Artifact artifact) {
+        DefaultArtifactCoordinate coordinate = new DefaultArtifactCoordinate();
+        coordinate.setGroupId(artifact.getGroupId());
+        coordinate.setArtifactId(artifact.getArtifactId());
+        coordinate.setVersion(artifact.getVersion());
+        coordinate.setExtension(artifact.getArtifactHandler().getExtension());
+
+        if (replacement != null) {
+            String[] parts = replacement.split(":");
+            if (parts.length < 2 || parts.length > 5) {
+                throw new IllegalArgumentException("invalid replacement: " + replacement);
+            }
+            coordinate.setGroupId(parts[0]);
+            coordinate.setArtifactId(parts[1]);
+            coordinate.setClassifier(null);
+            if (parts.length > 2) {
+                coordinate.setVersion(parts[parts.length - 1]);
+            }
+            if (parts.length > 3) {
+                coordinate.setExtension(parts[2]);
+            }
+            if (parts.length > 4) {
+                coordinate.setClassifier(parts[3]);
+            }
+        }
+
+        if (classifier != null) {
+            coordinate.setClassifier(classifier);
+        }
+
+        return coordinate;
+    }
+
+    @Override
+    public String toString() {
+        return groupId + ":" + (artifactId != null ? artifactId : "*")
+                + (replacement != null ? " -> " + replacement : "")
+                + (classifier != null ? " (" + classifier + ")" : "");
+    }
+
+}
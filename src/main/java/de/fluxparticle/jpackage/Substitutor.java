@@ -0,0 +1,122 @@
+package de.fluxparticle.jpackage;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.apache.maven.shared.transfer.artifact.DefaultArtifactCoordinate;
+import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResolver;
+import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResolverException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class Substitutor {
+
+    private final ArtifactResolver artifactResolver;
+
+    private final ProjectBuildingRequest buildingRequest;
+
+    private final List<Substitution> substitutions;
+
+    private final Log log;
+
+    Substitutor(ArtifactResolver artifactResolver, ProjectBuildingRequest buildingRequest, List<Substitution> substitutions, Log log) {
+        this.artifactResolver = artifactResolver;
+        this.buildingRequest = buildingRequest;
+        this.substitutions = substitutions;
+        this.log = log;
+    }
+
+    /**
+     * Resolves the modular variants of all artifacts a substitution matches, in parallel. An artifact whose variant
+     * cannot be resolved or is not modular keeps being fixed.
+     *
+     * @return the jar of the modular variant per jar of the substituted artifact
+     */
+    Map<Path, Path> resolve(Collection<Artifact> artifacts, int threads) throws IOException, InterruptedException {
+        Map<Path, DefaultArtifactCoordinate> coordinates = new LinkedHashMap<>();
+        for (Artifact artifact : artifacts) {
+            if (artifact.getFile() == null) {
+                continue;
+            }
+            for (Substitution substitution : substitutions) {
+                if (substitution.matches(artifact)) {
+                    try {
+                        coordinates.put(artifact.getFile().toPath(), substitution.coordinate(artifact));
+                    } catch (IllegalArgumentException e) {
+                        log.warn("Substitution " + substitution + ": " + e.getMessage());
+                    }
+                    break;
+                }
+            }
+        }
+
+        Map<Path, Path> result = new LinkedHashMap<>();
+        if (coordinates.isEmpty()) {
+            return result;
+        }
+
+        int poolSize = Math.min(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(), coordinates.size());
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        try {
+            Map<Path, Future<Path>> futures = new LinkedHashMap<>();
+            coordinates.forEach((jar, coordinate) -> futures.put(jar, executor.submit(() -> resolve(coordinate))));
+
+            for (Map.Entry<Path, Future<Path>> entry : futures.entrySet()) {
+                Path substitute = entry.getValue().get();
+                if (substitute != null) {
+                    result.put(entry.getKey(), substitute);
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return result;
+    }
+
+    private Path resolve(DefaultArtifactCoordinate coordinate) throws IOException {
+        Path file;
+        try {
+            file = artifactResolver.resolveArtifact(buildingRequest, coordinate).getArtifact().getFile().toPath();
+        } catch (ArtifactResolverException | IllegalArgumentException e) {
+            log.warn("Cannot resolve substitute " + coordinate + ": " + e.getMessage());
+            return null;
+        }
+
+        if (!JarMetadata.of(file).isModular()) {
+            log.warn("Substitute is not modular: " + coordinate);
+            return null;
+        }
+
+        return file;
+    }
+
+}
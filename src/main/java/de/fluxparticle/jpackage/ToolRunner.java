@@ -0,0 +1,141 @@
+package de.fluxparticle.jpackage;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.spi.ToolProvider;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class ToolRunner {
+
+    private static final Path JAVA_HOME = Path.of(System.getProperty("java.home"));
+
+    /**
+     * Tools that fail when they run concurrently in one JVM, as in a parallel reactor build. jpackage runs jlink.
+     */
+    private static final Set<String> SERIAL_TOOLS = Set.of("jlink", "jpackage");
+
+    private static final Object SERIAL_LOCK = new Object();
+
+    private final Log log;
+
+    private final boolean fork;
+
+    ToolRunner(Log log, boolean fork) {
+        this.log = log;
+        this.fork = fork;
+    }
+
+    /**
+     * Runs a JDK tool like {@code jdeps} or {@code jpackage}. The tool runs inside the current JVM via
+     * {@link ToolProvider} unless forking was requested or the tool is not available as a provider.
+     *
+     * @return {@code true} if the tool finished with exit code 0
+     */
+    boolean run(String name, String... args) throws IOException, InterruptedException {
+        Optional<ToolProvider> toolProvider = fork ? Optional.empty() : ToolProvider.findFirst(name);
+
+        if (toolProvider.isPresent()) {
+            if (SERIAL_TOOLS.contains(name)) {
+                synchronized (SERIAL_LOCK) {
+                    return run(toolProvider.get(), args);
+                }
+            }
+            return run(toolProvider.get(), args);
+        }
+
+        List<String> cmdArray = new ArrayList<>();
+        cmdArray.add(JAVA_HOME.resolve("bin").resolve(name).toString());
+        cmdArray.addAll(Arrays.asList(args));
+
+        return exec(cmdArray);
+    }
+
+    private boolean run(ToolProvider toolProvider, String... args) {
+        try (PrintWriter out = new PrintWriter(new LogWriter(log::info));
+             PrintWriter err = new PrintWriter(new LogWriter(log::warn))) {
+            return toolProvider.run(out, err, args) == 0;
+        }
+    }
+
+    private boolean exec(List<String> cmdArray) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(cmdArray).redirectErrorStream(true).start();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                log.info(line);
+            }
+        }
+
+        return process.waitFor() == 0;
+    }
+
+    private static class LogWriter extends Writer {
+
+        private final Consumer<String> consumer;
+
+        private final StringBuilder line = new StringBuilder();
+
+        LogWriter(Consumer<String> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public synchronized void write(char[] cbuf, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                char c = cbuf[i];
+                if (c == '\n') {
+                    emit();
+                } else if (c != '\r') {
+                    line.append(c);
+                }
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public synchronized void close() {
+            if (line.length() > 0) {
+                emit();
+            }
+        }
+
+        private void emit() {
+            consumer.accept(line.toString());
+            line.setLength(0);
+        }
+
+    }
+
+}
@@ -0,0 +1,358 @@
+package de.fluxparticle.jpackage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class ZipDirectory {
+
+    static final int LOCAL_HEADER = 0x04034b50;
+
+    static final int CENTRAL_HEADER = 0x02014b50;
+
+    static final int END_HEADER = 0x06054b50;
+
+    static final int ZIP64_END_HEADER = 0x06064b50;
+
+    static final int ZIP64_LOCATOR = 0x07064b50;
+
+    static final int LOCAL_HEADER_SIZE = 30;
+
+    static final int CENTRAL_HEADER_SIZE = 46;
+
+    static final int END_HEADER_SIZE = 22;
+
+    static final int ZIP64_END_HEADER_SIZE = 56;
+
+    static final int ZIP64_LOCATOR_SIZE = 20;
+
+    static final int STORED = 0;
+
+    static final int DEFLATED = 8;
+
+    private static final int MAX_COMMENT = 0xFFFF;
+
+    private final FileChannel channel;
+
+    private final long prefixLength;
+
+    private final long centralDirectoryOffset;
+
+    private final ByteBuffer centralDirectory;
+
+    private final boolean zip64;
+
+    private final List<Entry> entries;
+
+    private ZipDirectory(FileChannel channel, long prefixLength, long centralDirectoryOffset, ByteBuffer centralDirectory, boolean zip64, List<Entry> entries) {
+        this.channel = channel;
+        this.prefixLength = prefixLength;
+        this.centralDirectoryOffset = centralDirectoryOffset;
+        this.centralDirectory = centralDirectory;
+        this.zip64 = zip64;
+        this.entries = entries;
+    }
+
+    /**
+     * Reads the central directory of a zip file without touching the entries themselves. The returned directory
+     * keeps {@code channel} for {@link #read(Entry)}, the caller stays responsible for closing it.
+     */
+    static ZipDirectory read(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < END_HEADER_SIZE) {
+            throw new ZipException("zip END header not found");
+        }
+
+        // almost all jars have no comment, so the END header is usually found in the last bytes
+        int tailSize = END_HEADER_SIZE;
+        ByteBuffer tail = read(channel, fileSize - tailSize, tailSize);
+        int end = 0;
+        if (tail.getInt(0) != END_HEADER) {
+            tailSize = (int) Math.min(fileSize, END_HEADER_SIZE + MAX_COMMENT);
+            tail = read(channel, fileSize - tailSize, tailSize);
+            end = -1;
+            for (int i = tailSize - END_HEADER_SIZE; i >= 0; i--) {
+                if (tail.getInt(i) == END_HEADER) {
+                    end = i;
+                    break;
+                }
+            }
+            if (end < 0) {
+                throw new ZipException("zip END header not found");
+            }
+        }
+
+        long count = Short.toUnsignedInt(tail.getShort(end + 10));
+        long size = Integer.toUnsignedLong(tail.getInt(end + 12));
+        long offset = Integer.toUnsignedLong(tail.getInt(end + 16));
+
+        boolean zip64 = false;
+        long endOffset = fileSize - tailSize + end;
+        long directoryEnd = endOffset;
+        if (endOffset >= ZIP64_LOCATOR_SIZE) {
+            ByteBuffer locator = read(channel, endOffset - ZIP64_LOCATOR_SIZE, ZIP64_LOCATOR_SIZE);
+            if (locator.getInt(0) == ZIP64_LOCATOR) {
+                directoryEnd = locator.getLong(8);
+                ByteBuffer zip64End = directoryEnd >= 0 && directoryEnd <= endOffset - ZIP64_END_HEADER_SIZE
+                        ? read(channel, directoryEnd, ZIP64_END_HEADER_SIZE) : null;
+                if (zip64End == null || zip64End.getInt(0) != ZIP64_END_HEADER) {
+                    // the offset is off by the length of a prefix, the record is usually right before the locator
+                    directoryEnd = endOffset - ZIP64_LOCATOR_SIZE - ZIP64_END_HEADER_SIZE;
+                    zip64End = directoryEnd >= 0 ? read(channel, directoryEnd, ZIP64_END_HEADER_SIZE) : null;
+                }
+                if (zip64End == null || zip64End.getInt(0) != ZIP64_END_HEADER) {
+                    throw new ZipException("invalid zip64 END header");
+                }
+                count = zip64End.getLong(32);
+                size = zip64End.getLong(40);
+                offset = zip64End.getLong(48);
+                zip64 = true;
+            }
+        }
+
+        // the central directory ends where the END header starts, bytes before the zip (e.g. a launcher script)
+        // shift everything by the same amount without being part of the recorded offsets
+        long prefixLength = directoryEnd - size - offset;
+        if (offset < 0 || size < 0 || prefixLength < 0 || size > Integer.MAX_VALUE) {
+            throw new ZipException("invalid central directory");
+        }
+
+        ByteBuffer centralDirectory = read(channel, prefixLength + offset, (int) size);
+        byte[] bytes = centralDirectory.array();
+
+        List<Entry> entries = new ArrayList<>((int) Math.min(count, 1 << 16));
+        int pos = 0;
+        while (pos < size) {
+            if (centralDirectory.getInt(pos) != CENTRAL_HEADER) {
+                throw new ZipException("invalid CEN header");
+            }
+
+            Entry entry = new Entry();
+            entry.centralOffset = pos;
+            entry.method = Short.toUnsignedInt(centralDirectory.getShort(pos + 10));
+            entry.time = centralDirectory.getInt(pos + 12);
+            entry.compressedSize = Integer.toUnsignedLong(centralDirectory.getInt(pos + 20));
+            entry.size = Integer.toUnsignedLong(centralDirectory.getInt(pos + 24));
+            int nameLength = Short.toUnsignedInt(centralDirectory.getShort(pos + 28));
+            int extraLength = Short.toUnsignedInt(centralDirectory.getShort(pos + 30));
+            int commentLength = Short.toUnsignedInt(centralDirectory.getShort(pos + 32));
+            entry.localOffset = Integer.toUnsignedLong(centralDirectory.getInt(pos + 42));
+            entry.name = new String(bytes, pos + CENTRAL_HEADER_SIZE, nameLength, StandardCharsets.UTF_8);
+
+            readZip64Extra(centralDirectory, pos + CENTRAL_HEADER_SIZE + nameLength, extraLength, entry);
+            entry.localOffset += prefixLength;
+
+            entry.centralLength = CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+            pos += entry.centralLength;
+
+            entries.add(entry);
+        }
+
+        return new ZipDirectory(channel, prefixLength, prefixLength + offset, centralDirectory, zip64, Collections.unmodifiableList(entries));
+    }
+
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * The number of bytes before the zip data. The offsets recorded in the zip are relative to its end, the offsets
+     * of this directory and its entries are positions in the file.
+     */
+    long getPrefixLength() {
+        return prefixLength;
+    }
+
+    long getCentralDirectoryOffset() {
+        return centralDirectoryOffset;
+    }
+
+    boolean isZip64() {
+        return zip64;
+    }
+
+    /**
+     * The raw bytes of the central directory record of {@code entry}.
+     */
+    ByteBuffer centralRecord(Entry entry) {
+        ByteBuffer record = centralDirectory.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        record.position(entry.centralOffset);
+        record.limit(entry.centralOffset + entry.centralLength);
+        return record.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * The offset of the compressed data of {@code entry}, right after its local header.
+     */
+    long dataOffset(Entry entry) throws IOException {
+        ByteBuffer header = read(channel, entry.localOffset, LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_HEADER) {
+            throw new ZipException("invalid LOC header: " + entry.name);
+        }
+        int nameLength = Short.toUnsignedInt(header.getShort(26));
+        int extraLength = Short.toUnsignedInt(header.getShort(28));
+        return entry.localOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+    }
+
+    /**
+     * Reads and inflates the content of a single entry.
+     */
+    byte[] read(Entry entry) throws IOException {
+        if (entry.size > Integer.MAX_VALUE || entry.compressedSize > Integer.MAX_VALUE) {
+            throw new ZipException("entry too large: " + entry.name);
+        }
+
+        byte[] data = read(channel, dataOffset(entry), (int) entry.compressedSize).array();
+
+        switch (entry.method) {
+            case STORED: {
+                if (data.length != entry.size) {
+                    throw new ZipException("invalid size: " + entry.name);
+                }
+                return data;
+            }
+            case DEFLATED: {
+                Inflater inflater = new Inflater(true);
+                try {
+                    inflater.setInput(data);
+                    byte[] bytes = new byte[(int) entry.size];
+                    int n = 0;
+                    while (n < bytes.length && !inflater.finished()) {
+                        int inflated = inflater.inflate(bytes, n, bytes.length - n);
+                        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            throw new ZipException("truncated entry: " + entry.name);
+                        }
+                        n += inflated;
+                    }
+                    return bytes;
+                } catch (DataFormatException e) {
+                    throw new ZipException(entry.name + ": " + e.getMessage());
+                } finally {
+                    inflater.end();
+                }
+            }
+            default:
+                throw new ZipException("unsupported compression method " + entry.method + ": " + entry.name);
+        }
+    }
+
+    private static void readZip64Extra(ByteBuffer buffer, int pos, int length, Entry entry) {
+        int end = pos + length;
+        while (pos + 4 <= end) {
+            int tag = Short.toUnsignedInt(buffer.getShort(pos));
+            int size = Short.toUnsignedInt(buffer.getShort(pos + 2));
+            pos += 4;
+            if (tag == 0x0001) {
+                int p = pos;
+                if (entry.size == 0xFFFFFFFFL && p + 8 <= pos + size) {
+                    entry.size = buffer.getLong(p);
+                    p += 8;
+                }
+                if (entry.compressedSize == 0xFFFFFFFFL && p + 8 <= pos + size) {
+                    entry.compressedSize = buffer.getLong(p);
+                    p += 8;
+                }
+                if (entry.localOffset == 0xFFFFFFFFL && p + 8 <= pos + size) {
+                    entry.localOffset = buffer.getLong(p);
+                }
+                entry.zip64 = true;
+            }
+            pos += size;
+        }
+    }
+
+    /**
+     * Reads {@code size} bytes at {@code position} into a heap buffer. Mapping the file costs more than reading for the
+     * few kilobytes of a central directory.
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("unexpected end of zip file");
+            }
+        }
+        return buffer.clear();
+    }
+
+    static class Entry {
+
+        private String name;
+
+        private int method;
+
+        private int time;
+
+        private long compressedSize;
+
+        private long size;
+
+        private long localOffset;
+
+        private boolean zip64;
+
+        private int centralOffset;
+
+        private int centralLength;
+
+        String getName() {
+            return name;
+        }
+
+        int getMethod() {
+            return method;
+        }
+
+        int getTime() {
+            return time;
+        }
+
+        long getCompressedSize() {
+            return compressedSize;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getLocalOffset() {
+            return localOffset;
+        }
+
+        boolean isZip64() {
+            return zip64;
+        }
+
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+    }
+
+}
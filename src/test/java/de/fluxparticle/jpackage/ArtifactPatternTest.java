@@ -0,0 +1,55 @@
+package de.fluxparticle.jpackage;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class ArtifactPatternTest {
+
+    private static final Artifact CODEC = new DefaultArtifact("commons-codec", "commons-codec", "1.15",
+            Artifact.SCOPE_COMPILE, "jar", null, new DefaultArtifactHandler("jar"));
+
+    @Test
+    void matchesBothPartsWithWildcards() {
+        assertTrue(ArtifactPattern.parse("commons-codec:commons-codec").matches(CODEC));
+        assertTrue(ArtifactPattern.parse("commons-*:*").matches(CODEC));
+        assertTrue(ArtifactPattern.parse(" *:*-codec ").matches(CODEC));
+        assertFalse(ArtifactPattern.parse("commons-codec:commons").matches(CODEC));
+        assertFalse(ArtifactPattern.parse("commons.codec:*").matches(CODEC));
+    }
+
+    @Test
+    void matchesAllArtifactsOfAGroupWithoutArtifactId() {
+        assertTrue(new ArtifactPattern("commons-codec", null).matches(CODEC));
+        assertFalse(new ArtifactPattern("commons-io", null).matches(CODEC));
+    }
+
+    @Test
+    void rejectsPatternsWithoutTwoParts() {
+        assertThrows(IllegalArgumentException.class, () -> ArtifactPattern.parse("commons-codec"));
+        assertThrows(IllegalArgumentException.class, () -> ArtifactPattern.parse("a:b:c"));
+    }
+
+}
@@ -0,0 +1,72 @@
+package de.fluxparticle.jpackage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.spi.ToolProvider;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class BatchAnalysisTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void modulePathHasAllOtherJarsWithTheFixedOnesInPlace() {
+        List<String> classpath = List.of("/repo/classes", "/repo/a.jar", "/repo/b.jar", "/repo/c.jar");
+
+        List<String> modulePath = BuildImage.modulePath(classpath, Path.of("/repo/b.jar"), Map.of(Path.of("/repo/c.jar"), "/target/modules/c.jar"));
+
+        assertEquals(List.of("/repo/a.jar", "/target/modules/c.jar"), modulePath);
+    }
+
+    /**
+     * The batch run writes the descriptors into directories named by jdeps, which fix() finds by the module name of
+     * the jar.
+     */
+    @Test
+    void jdepsWritesTheDescriptorsWhereTheyAreLookedFor() throws Exception {
+        Path bar = new TestJars(Files.createDirectories(dir.resolve("bar")))
+                .attribute("Automatic-Module-Name", "org.example.bar")
+                .compile(11, false, "package bar; public class Bar {}")
+                .write("bar-lib-2.0.jar");
+        Path foo = new TestJars(Files.createDirectories(dir.resolve("foo")))
+                .classpath(bar)
+                .compile(11, false, "package foo; public class Foo { public bar.Bar bar() { return null; } }")
+                .write("commons-foo_x-1.2.3.jar");
+
+        Path modulesDir = dir.resolve("modules");
+        int status = ToolProvider.findFirst("jdeps").orElseThrow()
+                .run(System.out, System.err, "--generate-module-info", modulesDir.toString(), bar.toString(), foo.toString());
+        assertEquals(0, status);
+
+        assertEquals("org.example.bar", JarMetadata.of(bar).getModuleName());
+        assertEquals("commons.foo.x", JarMetadata.of(foo).getModuleName());
+        assertTrue(Files.exists(modulesDir.resolve("org.example.bar/module-info.java")));
+        assertTrue(Files.readString(modulesDir.resolve("commons.foo.x/module-info.java")).contains("requires transitive org.example.bar;"));
+    }
+
+}
@@ -0,0 +1,66 @@
+package de.fluxparticle.jpackage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class BuildReportTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void writesProfileSizeAndModulesOfTheImage() throws Exception {
+        BuildReport report = new BuildReport();
+        report.image("fast-startup", 4096, 2048, List.of("app", "java.base"), true);
+        Path file = dir.resolve("target/jpackage-report.json");
+
+        report.write(file);
+
+        String json = Files.readString(file);
+        assertTrue(json.contains("\"image\": {\"profile\": \"fast-startup\", \"bytes\": 4096, \"runtimeBytes\": 2048,"
+                + " \"cdsArchive\": true, \"modules\": [\"app\", \"java.base\"]}"), json);
+    }
+
+    @Test
+    void writesPhasesAndSpans() throws Exception {
+        BuildReport report = new BuildReport();
+        report.time(BuildReport.ANALYSE, "a.jar", () -> null);
+        try (BuildReport.Span span = report.start(BuildReport.CACHE, "b.jar")) {
+            span.cacheHit();
+        }
+        Path file = dir.resolve("jpackage-report.json");
+
+        report.write(file);
+
+        String json = Files.readString(file);
+        assertFalse(json.contains("\"image\""), json);
+        assertTrue(json.contains("{\"phase\": \"analyse\", \"count\": 1,"), json);
+        assertTrue(json.contains("\"phase\": \"cache\", \"subject\": \"b.jar\""), json);
+        assertTrue(json.contains("\"cacheHit\": true"), json);
+    }
+
+}
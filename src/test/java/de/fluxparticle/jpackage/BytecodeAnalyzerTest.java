@@ -0,0 +1,118 @@
+package de.fluxparticle.jpackage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.Collections.emptyList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class BytecodeAnalyzerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void analysesClassFilesOfTheRunningRelease() throws Exception {
+        int release = Runtime.version().feature();
+        Path jar = new TestJars(dir)
+                .compile(release, false, "package a; public record A(java.net.http.HttpClient client) {}")
+                .write("a.jar");
+
+        ModuleInfo info = new BytecodeAnalyzer(emptyList()).analyse(jar, "a");
+
+        assertTrue(info.getRequires().contains("java.net.http"));
+        assertTrue(info.getExports().containsKey("a"));
+    }
+
+    @Test
+    void collectsPackagesThatAreNotOnTheModulePath() throws Exception {
+        Path lib = new TestJars(Files.createDirectories(dir.resolve("lib")))
+                .compile(11, false, "package lib; public class Lib {}")
+                .write("lib.jar");
+        Path jar = new TestJars(dir)
+                .classpath(lib)
+                .compile(11, false, "package a; public class A { public lib.Lib lib() { return null; } }")
+                .write("a.jar");
+
+        BytecodeAnalyzer analyzer = new BytecodeAnalyzer(emptyList());
+        ModuleInfo info = analyzer.analyse(jar, "a");
+
+        assertEquals(Set.of("lib"), analyzer.getMissingPackages());
+        assertFalse(info.getRequires().contains("lib"));
+
+        BytecodeAnalyzer withLib = new BytecodeAnalyzer(List.of(lib.toString()));
+        assertTrue(withLib.analyse(jar, "a").getRequires().contains("lib"));
+        assertTrue(withLib.getMissingPackages().isEmpty());
+    }
+
+    @Test
+    void reportsUnsupportedClassFiles() throws Exception {
+        TestJars jars = new TestJars(dir).compile(11, false, "package a; public class A {}");
+        byte[] bytes = jars.get("a/A.class");
+        bytes[6] = (byte) 0x7F;
+        jars.put("a/A.class", bytes);
+        Path jar = jars.write("a.jar");
+
+        BytecodeAnalyzer.UnsupportedClassException e = assertThrows(BytecodeAnalyzer.UnsupportedClassException.class,
+                () -> new BytecodeAnalyzer(emptyList()).analyse(jar, "a"));
+        assertEquals("Cannot analyse a/A.class of a.jar: Unsupported class file major version " + (0x7F << 8 | bytes[7]), e.getMessage());
+    }
+
+    @Test
+    void findsServicesPassedInAnyForm() throws Exception {
+        Path jar = new TestJars(dir)
+                .compile(11, false,
+                        "package a; public interface Direct {}",
+                        "package a; public interface WithLoader {}",
+                        "package a; public interface Installed {}",
+                        "package a; public interface Local {}",
+                        "package a; public interface Field {}",
+                        "package a; public interface Layer {}",
+                        "package a; public interface Unused {}")
+                .compile(11, false, String.join("\n",
+                        "package b;",
+                        "import java.util.ServiceLoader;",
+                        "import a.*;",
+                        "public class Loader {",
+                        "    private static final Class<Field> FIELD = Field.class;",
+                        "    void direct() { ServiceLoader.load(Direct.class); }",
+                        "    void withLoader() { ServiceLoader.load(WithLoader.class, Loader.class.getClassLoader()); }",
+                        "    void installed() { ServiceLoader.loadInstalled(Installed.class); }",
+                        "    void local(boolean b) { Class<Local> type = Local.class; if (b) { ServiceLoader.load(type); } }",
+                        "    void field() { ServiceLoader.load(FIELD); }",
+                        "    void layer() { ServiceLoader.load(ModuleLayer.boot(), Layer.class); }",
+                        "    Class<?> unused() { return Unused.class; }",
+                        "}"))
+                .write("a.jar");
+
+        ModuleInfo info = new BytecodeAnalyzer(emptyList()).analyse(jar, "a");
+
+        assertEquals(Set.of("a.Direct", "a.WithLoader", "a.Installed", "a.Local", "a.Field", "a.Layer"), info.getUses());
+    }
+
+}
@@ -0,0 +1,94 @@
+package de.fluxparticle.jpackage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class DependencyGraphTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * app -> lib -> util -> base, codec is a sibling of lib without any relationship.
+     */
+    private TestProject project() {
+        return new TestProject(dir)
+                .add("lib")
+                .add("util", "lib")
+                .add("base", "util")
+                .add("codec");
+    }
+
+    @Test
+    void followsTheDependencyTrails() {
+        TestProject project = project();
+        DependencyGraph graph = project.graph();
+
+        assertEquals(Set.of(project.jar("util")), graph.getDependencies(project.jar("lib")));
+        assertEquals(Set.of(project.jar("util"), project.jar("base")), graph.getTransitiveDependencies(project.jar("lib")));
+        assertEquals(Set.of(), graph.getTransitiveDependencies(project.jar("codec")));
+        assertEquals(Set.of(), graph.getTransitiveDependencies(project.jar("base")));
+    }
+
+    @Test
+    void knowsOnlyTheArtifactsOfTheProject() {
+        TestProject project = project();
+        DependencyGraph graph = project.graph();
+
+        assertTrue(graph.contains(project.jar("codec")));
+        assertFalse(graph.contains(dir.resolve("other-1.0.jar")));
+        assertEquals(Set.of(), graph.getDependencies(dir.resolve("other-1.0.jar")));
+    }
+
+    @Test
+    void scopesTheModulePathToTheTransitiveDependencies() {
+        TestProject project = project();
+        List<String> classpath = List.of(
+                dir.resolve("classes").toString(),
+                project.jar("codec").toString(),
+                project.jar("base").toString(),
+                project.jar("util").toString(),
+                project.jar("lib").toString()
+        );
+
+        List<String> modulePath = BuildImage.scopedModulePath(classpath, project.graph(), project.jar("lib"),
+                Map.of(project.jar("util"), "/target/modules/util-1.0.jar"));
+
+        assertEquals(List.of(project.jar("base").toString(), "/target/modules/util-1.0.jar"), modulePath);
+    }
+
+    @Test
+    void leavesTheModulePathOfLeavesEmpty() {
+        TestProject project = project();
+        List<String> classpath = List.of(project.jar("codec").toString(), project.jar("lib").toString());
+
+        assertEquals(List.of(), BuildImage.scopedModulePath(classpath, project.graph(), project.jar("codec"), Map.of()));
+    }
+
+}
@@ -0,0 +1,51 @@
+package de.fluxparticle.jpackage;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.TimeZone;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class FileUtilsTest {
+
+    @Test
+    void entryTimeShowsUtcAtDaylightSavingTimeChanges() {
+        TimeZone timeZone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("Europe/Berlin"));
+            for (LocalDateTime utc : new LocalDateTime[] {
+                    LocalDateTime.of(2021, 3, 28, 1, 30),
+                    LocalDateTime.of(2021, 10, 31, 0, 30),
+                    LocalDateTime.of(2021, 10, 31, 1, 30),
+                    LocalDateTime.of(2021, 7, 1, 12, 0),
+            }) {
+                ZipEntry entry = new ZipEntry("a");
+                entry.setTime(FileUtils.entryTime(utc.toInstant(ZoneOffset.UTC).toEpochMilli()));
+                assertEquals(utc, entry.getTimeLocal());
+            }
+        } finally {
+            TimeZone.setDefault(timeZone);
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+package de.fluxparticle.jpackage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class FingerprintTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void findsNothingChangedForTheSameInputs() throws Exception {
+        List<String> modulePath = modulePath();
+
+        Fingerprint previous = Fingerprint.of(modulePath, List.of("--name", "app"));
+        Fingerprint fingerprint = Fingerprint.of(modulePath, List.of("--name", "app"));
+
+        assertEquals(Set.of(), fingerprint.changedElements(previous));
+        assertEquals(previous.get(), fingerprint.get());
+    }
+
+    @Test
+    void findsChangedJarsAndExplodedModules() throws Exception {
+        List<String> modulePath = modulePath();
+        Fingerprint previous = Fingerprint.of(modulePath, List.of());
+
+        Files.writeString(Path.of(modulePath.get(0)), "a2");
+        Files.writeString(Path.of(modulePath.get(2)).resolve("c/C.class"), "c2");
+        Fingerprint fingerprint = Fingerprint.of(modulePath, List.of());
+
+        assertEquals(Set.of(modulePath.get(0), modulePath.get(2)), fingerprint.changedElements(previous));
+        assertNotEquals(previous.get(), fingerprint.get());
+    }
+
+    @Test
+    void findsRenamedFilesInExplodedModules() throws Exception {
+        List<String> modulePath = modulePath();
+        Fingerprint previous = Fingerprint.of(modulePath, List.of());
+
+        Path classes = Path.of(modulePath.get(2));
+        Files.move(classes.resolve("c/C.class"), classes.resolve("c/D.class"));
+        Fingerprint fingerprint = Fingerprint.of(modulePath, List.of());
+
+        assertEquals(Set.of(modulePath.get(2)), fingerprint.changedElements(previous));
+    }
+
+    @Test
+    void changesEverythingIfOptionsOrElementsChange() throws Exception {
+        List<String> modulePath = modulePath();
+        Fingerprint previous = Fingerprint.of(modulePath, List.of("--name", "app"));
+
+        assertNull(Fingerprint.of(modulePath, List.of("--name", "other")).changedElements(previous));
+        assertNull(Fingerprint.of(modulePath.subList(0, 2), List.of("--name", "app")).changedElements(previous));
+        assertNull(Fingerprint.of(modulePath, List.of()).changedElements(null));
+    }
+
+    @Test
+    void survivesStoreAndLoad() throws Exception {
+        List<String> modulePath = modulePath();
+        Fingerprint fingerprint = Fingerprint.of(modulePath, List.of("--name", "app"));
+        Path file = dir.resolve("target/app.fingerprint");
+
+        assertNull(Fingerprint.load(file));
+        fingerprint.store(file);
+        Fingerprint loaded = Fingerprint.load(file);
+
+        assertEquals(fingerprint.get(), loaded.get());
+        assertEquals(Set.of(), fingerprint.changedElements(loaded));
+    }
+
+    private List<String> modulePath() throws Exception {
+        Path a = Files.writeString(dir.resolve("a.jar"), "a");
+        Path b = Files.writeString(dir.resolve("b.jar"), "b");
+        Path classes = Files.createDirectories(dir.resolve("classes"));
+        Files.createDirectories(classes.resolve("c"));
+        Files.writeString(classes.resolve("module-info.class"), "module c");
+        Files.writeString(classes.resolve("c/C.class"), "c");
+        return List.of(a.toString(), b.toString(), classes.toString());
+    }
+
+}
@@ -0,0 +1,155 @@
+package de.fluxparticle.jpackage;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class FixCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private FixCache cache() {
+        return new FixCache(dir.resolve("cache"), 0, "test", new SystemStreamLog());
+    }
+
+    private void store(FixCache cache, String key) throws Exception {
+        Path module = Files.createDirectories(dir.resolve(key).resolve("a"));
+        Files.writeString(module.resolve("module-info.java"), "module a {}");
+        Path jar = Files.writeString(dir.resolve(key).resolve("a.jar"), "jar");
+        try (FixCache.Lock lock = cache.lock(key)) {
+            assertNotNull(lock);
+            cache.store(key, jar, module);
+        }
+    }
+
+    private Path runtime(FixCache cache, String key) throws Exception {
+        Path runtime = cache.createTempDirectory().resolve("runtime");
+        Files.createDirectories(runtime.resolve("lib"));
+        Files.writeString(runtime.resolve("release"), "JAVA_VERSION=\"17\"");
+        try (FixCache.Lock lock = cache.lock(key)) {
+            assertNotNull(lock);
+            return cache.storeRuntime(key, runtime);
+        }
+    }
+
+    @Test
+    void evictsEntriesWithTheirLockFiles() throws Exception {
+        FixCache cache = cache();
+        store(cache, "jar");
+        Path runtime = runtime(cache, "runtime");
+        assertTrue(Files.exists(dir.resolve("cache/locks/jar")));
+
+        cache.evict();
+
+        assertFalse(Files.exists(dir.resolve("cache/jar")));
+        assertFalse(Files.exists(runtime));
+        assertNull(cache.runtime("runtime"));
+        try (var locks = Files.list(dir.resolve("cache/locks"))) {
+            assertEquals(0, locks.count());
+        }
+    }
+
+    @Test
+    void keepsLockedEntries() throws Exception {
+        FixCache cache = cache();
+        store(cache, "jar");
+        Path runtime = runtime(cache, "runtime");
+
+        try (FixCache.Lock jar = cache.lock("jar"); FixCache.Lock lock = cache.lock("runtime")) {
+            assertNotNull(jar);
+            assertNotNull(lock);
+            Thread thread = new Thread(() -> {
+                try {
+                    cache.evict();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            thread.start();
+            thread.join();
+        }
+
+        assertTrue(Files.exists(dir.resolve("cache/jar")));
+        assertTrue(Files.isDirectory(runtime));
+        assertEquals(runtime, cache.runtime("runtime"));
+    }
+
+    @Test
+    void keepsARuntimeUntilItsUserReleasesIt() throws Exception {
+        FixCache cache = cache();
+        Path stored = runtime(cache, "runtime");
+
+        Path runtime;
+        try (FixCache.Lock lock = cache.lock("runtime")) {
+            runtime = cache.runtime("runtime");
+            assertEquals(stored, runtime);
+
+            Thread thread = new Thread(() -> {
+                try {
+                    cache.evict();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            thread.start();
+            thread.join();
+
+            // jpackage copies the runtime while the lock is held
+            assertTrue(Files.exists(runtime.resolve("release")));
+        }
+
+        cache.evict();
+        assertFalse(Files.exists(runtime));
+    }
+
+    @Test
+    void keysJarsWithTheSameBytesByModuleName() throws Exception {
+        Path foo = new TestJars(dir).compile(11, false, "package a; public class A {}").write("foo-1.0.jar");
+        Path bar = Files.copy(foo, dir.resolve("bar-1.0.jar"));
+        FixCache cache = cache();
+
+        String fooKey = cache.key(foo, List.of());
+        String barKey = cache.key(bar, List.of());
+        assertNotEquals(fooKey, barKey);
+
+        Path module = Files.createDirectories(dir.resolve("fixed/foo"));
+        Files.writeString(module.resolve("module-info.java"), "module foo {}");
+        cache.store(fooKey, foo, module);
+
+        Path modulesDir = dir.resolve("modules");
+        assertFalse(cache.restore(barKey, modulesDir.resolve("bar-1.0.jar"), modulesDir));
+        assertTrue(cache.restore(fooKey, modulesDir.resolve("foo-1.0.jar"), modulesDir));
+        assertTrue(Files.exists(modulesDir.resolve("foo/module-info.java")));
+        assertFalse(Files.exists(modulesDir.resolve("bar-1.0.jar")));
+    }
+
+}
@@ -0,0 +1,137 @@
+package de.fluxparticle.jpackage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class FixSchedulerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void fixesDependenciesFirst() throws Exception {
+        TestProject project = new TestProject(dir)
+                .add("a")
+                .add("b", "a")
+                .add("c", "b")
+                .add("d");
+        Path a = project.jar("a");
+        Path b = project.jar("b");
+        Path c = project.jar("c");
+        Path d = project.jar("d");
+
+        List<Path> order = Collections.synchronizedList(new ArrayList<>());
+        Map<Path, Map<Path, String>> seen = new ConcurrentHashMap<>();
+        Map<Path, String> result = new FixScheduler(2).run(List.of(a, b, c, d), project.graph(), (jar, fixedDependencies) -> {
+            order.add(jar);
+            seen.put(jar, fixedDependencies);
+            return "fixed-" + jar.getFileName();
+        });
+
+        assertEquals(List.of(a, b, c, d), new ArrayList<>(result.keySet()));
+        assertEquals("fixed-a-1.0.jar", result.get(a));
+        assertTrue(order.indexOf(c) < order.indexOf(b));
+        assertTrue(order.indexOf(b) < order.indexOf(a));
+        assertEquals(Map.of(b, "fixed-b-1.0.jar", c, "fixed-c-1.0.jar"), seen.get(a));
+        assertEquals(Map.of(c, "fixed-c-1.0.jar"), seen.get(b));
+        assertEquals(Map.of(), seen.get(d));
+    }
+
+    @Test
+    void leavesJarsThatCouldNotBeFixedOutOfTheDependencies() throws Exception {
+        TestProject project = new TestProject(dir)
+                .add("a")
+                .add("b", "a");
+        Path a = project.jar("a");
+        Path b = project.jar("b");
+
+        Map<Path, Map<Path, String>> seen = new ConcurrentHashMap<>();
+        Map<Path, String> result = new FixScheduler(1).run(List.of(a, b), project.graph(), (jar, fixedDependencies) -> {
+            seen.put(jar, fixedDependencies);
+            return jar.equals(b) ? null : "fixed";
+        });
+
+        assertNull(result.get(b));
+        assertEquals(Map.of(), seen.get(a));
+    }
+
+    @Test
+    void ignoresDependenciesThatAreNotFixed() throws Exception {
+        TestProject project = new TestProject(dir)
+                .add("a")
+                .add("modular", "a");
+        Path a = project.jar("a");
+
+        Map<Path, String> result = new FixScheduler(1).run(List.of(a), project.graph(), (jar, fixedDependencies) -> {
+            assertEquals(Map.of(), fixedDependencies);
+            return "fixed";
+        });
+
+        assertEquals(Map.of(a, "fixed"), result);
+    }
+
+    @Test
+    void propagatesTheFailureOfADependency() {
+        TestProject project = new TestProject(dir)
+                .add("a")
+                .add("b", "a");
+        Path a = project.jar("a");
+        Path b = project.jar("b");
+        IOException failure = new IOException("cannot fix b");
+
+        List<Path> fixed = Collections.synchronizedList(new ArrayList<>());
+        IOException e = assertThrows(IOException.class, () -> new FixScheduler(2).run(List.of(a, b), project.graph(), (jar, fixedDependencies) -> {
+            if (jar.equals(b)) {
+                throw failure;
+            }
+            fixed.add(jar);
+            return "fixed";
+        }));
+
+        assertSame(failure, e);
+        assertEquals(List.of(), fixed);
+    }
+
+    @Test
+    void rethrowsUncheckedFailures() {
+        TestProject project = new TestProject(dir).add("a");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> new FixScheduler(1).run(List.of(project.jar("a")), project.graph(), (jar, fixedDependencies) -> {
+            throw new IllegalStateException("broken");
+        }));
+
+        assertEquals("broken", e.getMessage());
+    }
+
+}
@@ -0,0 +1,104 @@
+package de.fluxparticle.jpackage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class FixServiceTest {
+
+    private final FixService service = new FixService();
+
+    private final FixService.Fixed fixed = new FixService.Fixed(Path.of("a.jar"), Path.of("a"));
+
+    @Test
+    void sharesTheResultOfAKey() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+
+        assertSame(fixed, service.fix("key", () -> {
+            runs.incrementAndGet();
+            return fixed;
+        }));
+        assertSame(fixed, service.fix("key", () -> {
+            runs.incrementAndGet();
+            return null;
+        }));
+
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void runsAgainAfterAJarCouldNotBeFixed() throws Exception {
+        assertNull(service.fix("key", () -> null));
+
+        assertSame(fixed, service.fix("key", () -> fixed));
+    }
+
+    @Test
+    void runsAgainAfterAFailure() throws Exception {
+        assertThrows(IOException.class, () -> service.fix("key", () -> {
+            throw new IOException("failed");
+        }));
+
+        assertSame(fixed, service.fix("key", () -> fixed));
+    }
+
+    @Test
+    void waitingCallersRunTheirOwnTaskIfTheJarCouldNotBeFixed() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread first = new Thread(() -> {
+            try {
+                service.fix("key", () -> {
+                    started.countDown();
+                    release.await();
+                    return null;
+                });
+            } catch (IOException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        first.start();
+        started.await();
+
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            release.countDown();
+        });
+        releaser.start();
+
+        assertSame(fixed, service.fix("key", () -> fixed));
+
+        first.join();
+        releaser.join();
+    }
+
+}
@@ -0,0 +1,120 @@
+package de.fluxparticle.jpackage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReference;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class JarMetadataTest {
+
+    private static final String A = "package a; public class A {}";
+
+    private static final String B = "package b.c; public class B {}";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void derivesTheModuleNameLikeTheModuleSystem() throws IOException {
+        List<String> fileNames = List.of(
+                "commons-lang3-3.12.0.jar",
+                "guava-31.1-jre.jar",
+                "scala-library-2.13.8.jar",
+                "jakarta.inject-api-2.0.1.jar",
+                "foo--bar__baz-1.0-SNAPSHOT.jar",
+                "_leading-trailing_-2.jar",
+                "slf4j-api.jar",
+                "noversion-x1.jar"
+        );
+
+        TestJars jars = new TestJars(dir).compile(11, false, A);
+        for (String fileName : fileNames) {
+            Path jar = jars.write(fileName);
+
+            assertEquals(automaticName(jar), JarMetadata.read(jar).getModuleName(), fileName);
+        }
+    }
+
+    @Test
+    void prefersTheAutomaticModuleName() throws IOException {
+        Path jar = new TestJars(dir)
+                .compile(11, false, A)
+                .attribute("Automatic-Module-Name", "org.example.a")
+                .write("a-1.0.jar");
+
+        assertEquals("org.example.a", automaticName(jar));
+        assertEquals("org.example.a", JarMetadata.read(jar).getModuleName());
+    }
+
+    @Test
+    void indexesPackagesLikeTheModuleSystem() throws IOException {
+        Path jar = new TestJars(dir)
+                .compile(11, false, A, B)
+                .add("META-INF/resources/index.html", "<html/>")
+                .write("packages-1.0.jar");
+
+        JarMetadata metadata = JarMetadata.read(jar);
+
+        assertEquals(descriptor(jar).packages(), new TreeSet<>(metadata.getPackages()));
+        assertFalse(metadata.isModular());
+        assertFalse(metadata.isMultiRelease());
+    }
+
+    @Test
+    void indexesVersionsAndVersionedDescriptors() throws IOException {
+        ModuleInfo info = new ModuleInfo("a");
+        info.addExports("a", List.of());
+        TestJars jars = new TestJars(dir)
+                .compile(11, false, A)
+                .compile(11, true, A);
+        jars.put("META-INF/versions/11/" + JarPatcher.MODULE_INFO, info.toByteArray());
+        Path jar = jars.write("versioned-1.0.jar");
+
+        JarMetadata metadata = JarMetadata.read(jar);
+
+        assertTrue(metadata.isMultiRelease());
+        assertEquals(Set.of(11), metadata.getVersions());
+        assertTrue(metadata.isModular());
+        assertEquals("a", metadata.getDescriptor().name());
+        assertEquals(descriptor(jar).name(), metadata.getDescriptor().name());
+    }
+
+    private static String automaticName(Path jar) {
+        return descriptor(jar).name();
+    }
+
+    private static ModuleDescriptor descriptor(Path jar) {
+        Set<ModuleReference> references = ModuleFinder.of(jar).findAll();
+        assertEquals(1, references.size());
+        return references.iterator().next().descriptor();
+    }
+
+}
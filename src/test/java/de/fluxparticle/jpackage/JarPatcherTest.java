@@ -0,0 +1,167 @@
+package de.fluxparticle.jpackage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class JarPatcherTest {
+
+    private static final byte[] MODULE_INFO = moduleInfo();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void copiesTheEntriesByteByByte() throws IOException {
+        Path jar = new TestJars(dir)
+                .compile(11, false, "package a; public class A {}")
+                .add("a/a.txt", "alpha")
+                .write("a.jar");
+
+        Path patched = patch(jar);
+
+        assertEntriesCopied(jar, patched);
+        assertFalse(isZip64(patched));
+    }
+
+    @Test
+    void keepsZip64Jars() throws IOException {
+        Path jar = manyEntries(0x10000 + 10);
+
+        Path patched = patch(jar);
+
+        assertEntriesCopied(jar, patched);
+        assertTrue(isZip64(patched));
+    }
+
+    @Test
+    void writesZip64IfTheDescriptorExceedsTheEntryCount() throws IOException {
+        // ZipOutputStream writes zip64 from 0xFFFF entries on, with the descriptor the patched jar has that many
+        Path jar = manyEntries(0xFFFF - 1);
+        assertFalse(isZip64(jar));
+
+        Path patched = patch(jar);
+
+        assertEntriesCopied(jar, patched);
+        assertTrue(isZip64(patched));
+    }
+
+    @Test
+    void keepsThePrefixOfAJar() throws IOException {
+        Path plain = new TestJars(dir)
+                .compile(11, false, "package a; public class A {}")
+                .write("plain.jar");
+        byte[] prefix = "#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes(StandardCharsets.UTF_8);
+        Path jar = dir.resolve("prefixed.jar");
+        try (OutputStream out = Files.newOutputStream(jar)) {
+            out.write(prefix);
+            Files.copy(plain, out);
+        }
+
+        Path patched = patch(jar);
+
+        assertEntriesCopied(jar, patched);
+    }
+
+    private Path patch(Path jar) throws IOException {
+        Path patched = dir.resolve("patched-" + jar.getFileName());
+        JarPatcher.patch(jar, MODULE_INFO, patched);
+        return patched;
+    }
+
+    /**
+     * Everything up to the central directory is copied as it is and all entries and the descriptor can be read.
+     */
+    private static void assertEntriesCopied(Path jar, Path patched) throws IOException {
+        long entriesEnd;
+        try (FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+            entriesEnd = ZipDirectory.read(channel).getCentralDirectoryOffset();
+        }
+        byte[] input = Files.readAllBytes(jar);
+        byte[] output = Files.readAllBytes(patched);
+        assertArrayEquals(Arrays.copyOf(input, (int) entriesEnd), Arrays.copyOf(output, (int) entriesEnd));
+
+        Map<String, byte[]> expected = contents(jar);
+        expected.put(JarPatcher.MODULE_INFO, MODULE_INFO);
+        Map<String, byte[]> actual = contents(patched);
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((name, content) -> assertArrayEquals(content, actual.get(name), name));
+    }
+
+    private static Map<String, byte[]> contents(Path jar) throws IOException {
+        Map<String, byte[]> contents = new TreeMap<>();
+        try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+            Iterator<? extends ZipEntry> iterator = zipFile.entries().asIterator();
+            while (iterator.hasNext()) {
+                ZipEntry entry = iterator.next();
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    contents.put(entry.getName(), in.readAllBytes());
+                }
+            }
+        }
+        return contents;
+    }
+
+    private static boolean isZip64(Path jar) throws IOException {
+        try (FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+            return ZipDirectory.read(channel).isZip64();
+        }
+    }
+
+    private Path manyEntries(int count) throws IOException {
+        Path jar = dir.resolve("many-" + count + ".jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            for (int i = 0; i < count; i++) {
+                out.putNextEntry(new ZipEntry("e/" + i + ".txt"));
+                out.write(Integer.toString(i).getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private static byte[] moduleInfo() {
+        ModuleInfo info = new ModuleInfo("a");
+        info.addExports("a", List.of());
+        return info.toByteArray();
+    }
+
+}
@@ -0,0 +1,121 @@
+package de.fluxparticle.jpackage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class ModuleGraphTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<String> modulePath = new ArrayList<>();
+
+    @Test
+    void acceptsAConsistentGraph() throws Exception {
+        module("lib", "lib");
+        module("app", "app", "lib");
+
+        assertEquals(List.of(), ModuleGraph.validate(modulePath, "app"));
+    }
+
+    @Test
+    void reportsDuplicateModules() throws Exception {
+        Path first = module("lib", "lib");
+        Path second = module("lib", "lib2");
+        module("app", "app", "lib");
+
+        List<String> problems = ModuleGraph.validate(modulePath, "app");
+
+        assertEquals(1, problems.size(), problems::toString);
+        assertTrue(problems.get(0).startsWith("Module lib found more than once"), problems::toString);
+        assertTrue(problems.get(0).contains(first.toString()), problems::toString);
+        assertTrue(problems.get(0).contains(second.toString()), problems::toString);
+    }
+
+    @Test
+    void reportsMissingRequires() throws Exception {
+        Path app = module("app", "app", "missing");
+
+        List<String> problems = ModuleGraph.validate(modulePath, "app");
+
+        assertEquals(1, problems.size(), problems::toString);
+        assertTrue(problems.get(0).contains("missing"), problems::toString);
+        assertTrue(problems.get(0).contains("app: " + app), problems::toString);
+    }
+
+    @Test
+    void reportsAMissingMainModule() throws Exception {
+        module("lib", "lib");
+
+        List<String> problems = ModuleGraph.validate(modulePath, "app");
+
+        assertEquals(1, problems.size(), problems::toString);
+        assertTrue(problems.get(0).contains("app"), problems::toString);
+    }
+
+    @Test
+    void reportsSplitPackages() throws Exception {
+        Path a = module("a", "shared");
+        Path b = module("b", "shared");
+        module("app", "app", "a", "b");
+
+        List<String> problems = ModuleGraph.validate(modulePath, "app");
+
+        String split = "Modules a (" + a + ") and b (" + b + ") contain the same packages: shared";
+        assertTrue(problems.contains(split), problems::toString);
+    }
+
+    @Test
+    void ignoresSplitPackagesOfModulesThatAreNotResolved() throws Exception {
+        module("a", "shared");
+        module("b", "shared");
+        module("app", "app", "a");
+
+        assertEquals(List.of(), ModuleGraph.validate(modulePath, "app"));
+    }
+
+    /**
+     * A modular jar {@code name.jar} with one class in {@code packageName}.
+     */
+    private Path module(String name, String packageName, String... requires) throws Exception {
+        TestJars jars = new TestJars(Files.createDirectories(dir.resolve("work")))
+                .compile(11, false, "package " + packageName + "; public class C {}");
+
+        ModuleInfo info = new ModuleInfo(name);
+        for (String module : requires) {
+            info.addRequires(module);
+        }
+        info.addExports(packageName, List.of());
+        jars.put(JarPatcher.MODULE_INFO, info.toByteArray());
+
+        Path jar = jars.write(name + "-" + modulePath.size() + ".jar");
+        modulePath.add(jar.toString());
+        return jar;
+    }
+
+}
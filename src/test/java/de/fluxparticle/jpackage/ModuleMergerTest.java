@@ -0,0 +1,124 @@
+package de.fluxparticle.jpackage;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.module.Configuration;
+import java.lang.module.ModuleFinder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.jar.JarFile;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class ModuleMergerTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<String> modulePath = new ArrayList<>();
+
+    private final Set<Path> fixed = new HashSet<>();
+
+    private TestJars jars(String name) throws Exception {
+        return new TestJars(Files.createDirectories(dir.resolve("classes").resolve(name)));
+    }
+
+    private Path module(String name, String... requires) throws Exception {
+        return module(jars(name), name, requires);
+    }
+
+    private Path module(TestJars jars, String name, String... requires) throws Exception {
+        Path jar = jars
+                .compile(11, false, "package " + name + "; public class C {}")
+                .write(name + ".jar");
+
+        ModuleInfo info = new ModuleInfo(name);
+        for (String module : requires) {
+            info.addRequires(module);
+        }
+        info.addExports(name, List.of());
+        SortedMap<String, byte[]> descriptors = new TreeMap<>();
+        descriptors.put(JarPatcher.MODULE_INFO, info.toByteArray());
+
+        Path patched = Files.createDirectories(dir.resolve("fixed")).resolve(name + ".jar");
+        JarPatcher.patch(jar, descriptors, patched);
+        modulePath.add(patched.toString());
+        fixed.add(patched);
+        return patched;
+    }
+
+    private List<String> merge(Map<String, List<Path>> groups) throws Exception {
+        return new ModuleMerger(dir.resolve("merged"), FileUtils.FIXED_TIME, new SystemStreamLog())
+                .merge(modulePath, fixed, groups);
+    }
+
+    private static Set<String> modules(List<String> modulePath) {
+        ModuleFinder finder = ModuleFinder.of(modulePath.stream().map(Path::of).toArray(Path[]::new));
+        Set<String> names = finder.findAll().stream()
+                .map(reference -> reference.descriptor().name())
+                .collect(toSet());
+        Configuration.resolve(finder, List.of(ModuleLayer.boot().configuration()), ModuleFinder.of(), names);
+        return names;
+    }
+
+    @Test
+    void keepsModulesOutOfGroupsThatWouldRequireEachOther() throws Exception {
+        Path a1 = module("a1", "b1");
+        Path a2 = module("a2");
+        Path b1 = module("b1");
+        Path b2 = module("b2", "a2");
+
+        List<String> result = merge(Map.of("group.a", List.of(a1, a2), "group.b", List.of(b1, b2)));
+
+        assertEquals(Set.of("group.a", "b1", "b2"), modules(result));
+    }
+
+    @Test
+    void concatenatesServiceFiles() throws Exception {
+        Path a = module(jars("a")
+                .add("META-INF/services/x.Service", "a.C\n")
+                .add("readme.txt", "a"), "a");
+        Path b = module(jars("b")
+                .add("META-INF/services/x.Service", "b.C\n")
+                .add("readme.txt", "b"), "b");
+
+        List<String> result = merge(Map.of("group", List.of(a, b)));
+
+        assertEquals(Set.of("group"), modules(result));
+        try (JarFile jar = new JarFile(result.get(0))) {
+            String services = new String(jar.getInputStream(jar.getEntry("META-INF/services/x.Service")).readAllBytes(), StandardCharsets.UTF_8);
+            assertEquals(List.of("a.C", "b.C"), services.lines().filter(line -> !line.isBlank()).collect(toList()));
+            assertEquals("a", new String(jar.getInputStream(jar.getEntry("readme.txt")).readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+}
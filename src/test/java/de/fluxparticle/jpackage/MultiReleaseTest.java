@@ -0,0 +1,88 @@
+package de.fluxparticle.jpackage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toSet;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class MultiReleaseTest {
+
+    private static final int RELEASE = 17;
+
+    @TempDir
+    Path dir;
+
+    private Path multiReleaseJar() throws Exception {
+        return new TestJars(dir)
+                .compile(11, false, "package a; public class A { public Object client() { return null; } }")
+                .compile(RELEASE, true, "package a; public class A { public Object client() { return java.net.http.HttpClient.newHttpClient(); } }")
+                .write("a.jar");
+    }
+
+    @Test
+    void releasesUpToTheRunningOne() throws Exception {
+        Path jar = multiReleaseJar();
+
+        assertEquals(List.of(MultiRelease.BASE, RELEASE), MultiRelease.releases(JarMetadata.of(jar)));
+    }
+
+    @Test
+    void analysesEachRelease() throws Exception {
+        Path jar = multiReleaseJar();
+        BytecodeAnalyzer analyzer = new BytecodeAnalyzer(emptyList());
+
+        SortedMap<Integer, ModuleInfo> infos = MultiRelease.run(MultiRelease.releases(JarMetadata.of(jar)),
+                release -> analyzer.analyse(jar, "a", release));
+
+        assertFalse(infos.get(MultiRelease.BASE).getRequires().contains("java.net.http"));
+        assertTrue(infos.get(RELEASE).getRequires().contains("java.net.http"));
+    }
+
+    @Test
+    void patchedJarUsesTheDescriptorOfTheRunningRelease() throws Exception {
+        Path jar = multiReleaseJar();
+        BytecodeAnalyzer analyzer = new BytecodeAnalyzer(emptyList());
+
+        SortedMap<String, byte[]> descriptors = new TreeMap<>();
+        for (int release : MultiRelease.releases(JarMetadata.of(jar))) {
+            descriptors.put(MultiRelease.descriptorName(release), analyzer.analyse(jar, "a", release).toByteArray());
+        }
+        Path patched = dir.resolve("patched").resolve("a.jar");
+        Files.createDirectories(patched.getParent());
+        JarPatcher.patch(jar, descriptors, patched);
+
+        ModuleDescriptor descriptor = ModuleFinder.of(patched).find("a").orElseThrow().descriptor();
+        assertTrue(descriptor.requires().stream().map(ModuleDescriptor.Requires::name).collect(toSet()).contains("java.net.http"));
+        assertEquals(descriptor, JarMetadata.of(patched).getDescriptor());
+    }
+
+}
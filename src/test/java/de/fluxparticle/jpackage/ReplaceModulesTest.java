@@ -0,0 +1,98 @@
+package de.fluxparticle.jpackage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class ReplaceModulesTest {
+
+    @TempDir
+    Path dir;
+
+    private final BuildImage mojo = new BuildImage();
+
+    @Test
+    void replacesChangedJars() throws Exception {
+        AppImage image = image("a.jar", "b.jar");
+        Path a = Files.writeString(Files.createDirectories(dir.resolve("repo")).resolve("a.jar"), "a2");
+
+        assertTrue(mojo.replaceModules(image, List.of(a.toString()), Set.of(a.toString())));
+
+        assertEquals("a2", Files.readString(image.getModsDir().resolve("a.jar")));
+        assertEquals("b.jar", Files.readString(image.getModsDir().resolve("b.jar")));
+    }
+
+    @Test
+    void replacesTheContentOfAnExplodedModule() throws Exception {
+        AppImage image = image("a.jar", JarPatcher.MODULE_INFO, "app/Old.class");
+        Path classes = Files.createDirectories(dir.resolve("classes"));
+        Files.writeString(classes.resolve(JarPatcher.MODULE_INFO), "module app");
+        Files.writeString(Files.createDirectories(classes.resolve("app")).resolve("New.class"), "new");
+
+        assertTrue(mojo.replaceModules(image, List.of(classes.toString()), Set.of(classes.toString())));
+
+        Path modsDir = image.getModsDir();
+        assertEquals("module app", Files.readString(modsDir.resolve(JarPatcher.MODULE_INFO)));
+        assertEquals("new", Files.readString(modsDir.resolve("app/New.class")));
+        assertFalse(Files.exists(modsDir.resolve("app/Old.class")));
+        assertEquals("a.jar", Files.readString(modsDir.resolve("a.jar")));
+    }
+
+    @Test
+    void rejectsModulesThatAreNotInTheImage() throws Exception {
+        AppImage image = image("a.jar");
+        Path b = Files.writeString(Files.createDirectories(dir.resolve("repo")).resolve("b.jar"), "b2");
+
+        assertFalse(mojo.replaceModules(image, List.of(b.toString()), Set.of(b.toString())));
+
+        assertFalse(Files.exists(image.getModsDir().resolve("b.jar")));
+    }
+
+    @Test
+    void rejectsSeveralExplodedModules() throws Exception {
+        AppImage image = image(JarPatcher.MODULE_INFO);
+        Path first = Files.createDirectories(dir.resolve("first"));
+        Path second = Files.createDirectories(dir.resolve("second"));
+        Files.writeString(first.resolve(JarPatcher.MODULE_INFO), "module first");
+
+        assertFalse(mojo.replaceModules(image, List.of(first.toString(), second.toString()), Set.of(first.toString())));
+
+        assertEquals(JarPatcher.MODULE_INFO, Files.readString(image.getModsDir().resolve(JarPatcher.MODULE_INFO)));
+    }
+
+    private AppImage image(String... files) throws Exception {
+        AppImage image = new AppImage(dir.resolve("target"), "app");
+        for (String file : files) {
+            Path path = image.getModsDir().resolve(file);
+            Files.createDirectories(path.getParent());
+            Files.writeString(path, file);
+        }
+        return image;
+    }
+
+}
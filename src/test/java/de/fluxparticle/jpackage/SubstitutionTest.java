@@ -0,0 +1,110 @@
+package de.fluxparticle.jpackage;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.shared.transfer.artifact.DefaultArtifactCoordinate;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class SubstitutionTest {
+
+    private static final Artifact STDLIB = artifact("org.jetbrains.kotlin", "kotlin-stdlib-jdk8", "1.4.0");
+
+    @Test
+    void matchesTheGroupAndTheArtifactPattern() {
+        assertTrue(new Substitution("org.jetbrains.kotlin", "kotlin-stdlib*", "modular").matches(STDLIB));
+        assertTrue(new Substitution("org.jetbrains.kotlin", null, "modular").matches(STDLIB));
+        assertTrue(new Substitution("org.jetbrains.kotlin", "*-jdk8", "modular").matches(STDLIB));
+        assertFalse(new Substitution("org.jetbrains.kotlin", "kotlin-reflect*", "modular").matches(STDLIB));
+        assertFalse(new Substitution("org.jetbrains", "kotlin-stdlib*", "modular").matches(STDLIB));
+        assertFalse(new Substitution("org.jetbrains.kotlin", "kotlin.stdlib*", "modular").matches(STDLIB));
+    }
+
+    @Test
+    void keepsTheCoordinatesAndSetsTheClassifier() {
+        DefaultArtifactCoordinate coordinate = new Substitution("org.jetbrains.kotlin", null, "modular").coordinate(STDLIB);
+
+        assertCoordinate("org.jetbrains.kotlin", "kotlin-stdlib-jdk8", "jar", "modular", "1.4.0", coordinate);
+    }
+
+    @Test
+    void parsesReplacementsWithoutVersion() {
+        DefaultArtifactCoordinate coordinate = replace("org.example:stdlib-modular").coordinate(STDLIB);
+
+        assertCoordinate("org.example", "stdlib-modular", "jar", null, "1.4.0", coordinate);
+    }
+
+    @Test
+    void parsesReplacementsWithVersion() {
+        DefaultArtifactCoordinate coordinate = replace("org.example:stdlib-modular:2.0").coordinate(STDLIB);
+
+        assertCoordinate("org.example", "stdlib-modular", "jar", null, "2.0", coordinate);
+    }
+
+    @Test
+    void parsesReplacementsWithExtension() {
+        DefaultArtifactCoordinate coordinate = replace("org.example:stdlib-modular:zip:2.0").coordinate(STDLIB);
+
+        assertCoordinate("org.example", "stdlib-modular", "zip", null, "2.0", coordinate);
+    }
+
+    @Test
+    void parsesReplacementsWithClassifier() {
+        DefaultArtifactCoordinate coordinate = replace("org.example:stdlib:jar:module:2.0").coordinate(STDLIB);
+
+        assertCoordinate("org.example", "stdlib", "jar", "module", "2.0", coordinate);
+    }
+
+    @Test
+    void prefersTheClassifierOverTheReplacement() {
+        DefaultArtifactCoordinate coordinate = new Substitution("org.jetbrains.kotlin", null, "modular", "org.example:stdlib:jar:module:2.0")
+                .coordinate(STDLIB);
+
+        assertEquals("modular", coordinate.getClassifier());
+    }
+
+    @Test
+    void rejectsInvalidReplacements() {
+        assertThrows(IllegalArgumentException.class, () -> replace("org.example").coordinate(STDLIB));
+        assertThrows(IllegalArgumentException.class, () -> replace("a:b:c:d:e:f").coordinate(STDLIB));
+    }
+
+    private static Substitution replace(String replacement) {
+        return new Substitution("org.jetbrains.kotlin", "kotlin-stdlib*", null, replacement);
+    }
+
+    private static void assertCoordinate(String groupId, String artifactId, String extension, String classifier, String version, DefaultArtifactCoordinate coordinate) {
+        assertEquals(groupId, coordinate.getGroupId());
+        assertEquals(artifactId, coordinate.getArtifactId());
+        assertEquals(extension, coordinate.getExtension());
+        assertEquals(classifier, coordinate.getClassifier());
+        assertEquals(version, coordinate.getVersion());
+    }
+
+    private static Artifact artifact(String groupId, String artifactId, String version) {
+        return new DefaultArtifact(groupId, artifactId, version, Artifact.SCOPE_COMPILE, "jar", null, new DefaultArtifactHandler("jar"));
+    }
+
+}
@@ -0,0 +1,162 @@
+package de.fluxparticle.jpackage;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class TestJars {
+
+    private static final Pattern PACKAGE = Pattern.compile("package\\s+([\\w.]+)\\s*;");
+
+    private static final Pattern CLASS = Pattern.compile("(?:class|interface|enum|record)\\s+(\\w+)");
+
+    private final Path dir;
+
+    private final Map<String, byte[]> entries = new TreeMap<>();
+
+    private final List<Path> classpath = new ArrayList<>();
+
+    private boolean multiRelease;
+
+    private final Map<String, String> attributes = new LinkedHashMap<>();
+
+    /**
+     * @param dir a temporary directory for the sources and classes
+     */
+    TestJars(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Compiles {@code sources} for {@code release} and adds the classes, in {@code META-INF/versions/N} unless
+     * {@code versioned} is {@code false}. Classes added before are on the classpath.
+     */
+    TestJars compile(int release, boolean versioned, String... sources) throws IOException {
+        Path work = Files.createTempDirectory(dir, "compile");
+        Path src = Files.createDirectories(work.resolve("src"));
+        Path out = Files.createDirectories(work.resolve("out"));
+
+        List<String> args = new ArrayList<>(List.of("--release", Integer.toString(release), "-d", out.toString()));
+        if (!classpath.isEmpty()) {
+            args.add("-cp");
+            args.add(classpath.stream().map(Path::toString).collect(joining(File.pathSeparator)));
+        }
+        for (String source : sources) {
+            Matcher packageMatcher = PACKAGE.matcher(source);
+            Matcher classMatcher = CLASS.matcher(source);
+            if (!classMatcher.find()) {
+                throw new IllegalArgumentException("no class in " + source);
+            }
+            Path packageDir = packageMatcher.find() ? src.resolve(packageMatcher.group(1).replace('.', '/')) : src;
+            Path file = Files.createDirectories(packageDir).resolve(classMatcher.group(1) + ".java");
+            Files.writeString(file, source);
+            args.add(file.toString());
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler.run(null, null, null, args.toArray(String[]::new)) != 0) {
+            throw new IOException("compilation failed");
+        }
+
+        String prefix = versioned ? "META-INF/versions/" + release + "/" : "";
+        multiRelease |= versioned;
+        List<Path> classes;
+        try (Stream<Path> files = Files.walk(out)) {
+            classes = files.filter(Files::isRegularFile).collect(toList());
+        }
+        for (Path file : classes) {
+            entries.put(prefix + out.relativize(file).toString().replace('\\', '/'), Files.readAllBytes(file));
+        }
+        classpath.add(out);
+        return this;
+    }
+
+    /**
+     * Adds a jar to the classpath of the following compilations, without adding its classes.
+     */
+    TestJars classpath(Path jar) {
+        classpath.add(jar);
+        return this;
+    }
+
+    /**
+     * Sets a main attribute of the manifest.
+     */
+    TestJars attribute(String name, String value) {
+        attributes.put(name, value);
+        return this;
+    }
+
+    TestJars add(String name, String content) {
+        entries.put(name, content.getBytes(StandardCharsets.UTF_8));
+        return this;
+    }
+
+    Path write(String fileName) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (multiRelease) {
+            manifest.getMainAttributes().put(Attributes.Name.MULTI_RELEASE, "true");
+        }
+        attributes.forEach(manifest.getMainAttributes()::putValue);
+
+        Path jar = dir.resolve(fileName);
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new JarEntry(JarFile.MANIFEST_NAME));
+            manifest.write(out);
+            out.closeEntry();
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                out.putNextEntry(new JarEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    byte[] get(String name) {
+        return entries.get(name);
+    }
+
+    void put(String name, byte[] content) {
+        entries.put(name, content);
+    }
+
+}
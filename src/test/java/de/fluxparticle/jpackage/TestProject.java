@@ -0,0 +1,100 @@
+package de.fluxparticle.jpackage;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.project.MavenProject;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class TestProject {
+
+    private static final String GROUP_ID = "test";
+
+    private static final String VERSION = "1.0";
+
+    private final Path dir;
+
+    private final Map<String, List<String>> trails = new HashMap<>();
+
+    private final Set<Artifact> artifacts = new LinkedHashSet<>();
+
+    /**
+     * @param dir the directory the (not necessarily existing) jars of the artifacts are in
+     */
+    TestProject(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Adds a dependency on {@code artifactId} to the project itself.
+     */
+    TestProject add(String artifactId) {
+        return add(artifactId, null);
+    }
+
+    /**
+     * Adds a dependency on {@code artifactId} to the artifact {@code parent} that was added before.
+     */
+    TestProject add(String artifactId, String parent) {
+        Artifact artifact = artifact(artifactId);
+        List<String> trail = new ArrayList<>(parent != null ? trails.get(parent) : List.of(id("project")));
+        trail.add(artifact.getId());
+        trails.put(artifactId, trail);
+        artifact.setDependencyTrail(trail);
+        artifacts.add(artifact);
+        return this;
+    }
+
+    /**
+     * The jar of {@code artifactId}.
+     */
+    Path jar(String artifactId) {
+        return dir.resolve(artifactId + "-" + VERSION + ".jar");
+    }
+
+    MavenProject get() {
+        MavenProject project = new MavenProject();
+        project.setArtifact(artifact("project"));
+        project.setArtifacts(artifacts);
+        return project;
+    }
+
+    DependencyGraph graph() {
+        return DependencyGraph.of(get());
+    }
+
+    private Artifact artifact(String artifactId) {
+        Artifact artifact = new DefaultArtifact(GROUP_ID, artifactId, VERSION, Artifact.SCOPE_COMPILE, "jar", null, new DefaultArtifactHandler("jar"));
+        artifact.setFile(jar(artifactId).toFile());
+        return artifact;
+    }
+
+    private static String id(String artifactId) {
+        return GROUP_ID + ":" + artifactId + ":jar:" + VERSION;
+    }
+
+}
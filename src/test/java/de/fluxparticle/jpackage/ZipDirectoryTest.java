@@ -0,0 +1,159 @@
+package de.fluxparticle.jpackage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * jPackageMavenPlugin - A Maven Plugin to patch all non-modular dependencies and runs jpackage (JDK 14)
+ * Copyright (C) 2020  Sven Reinck
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0
+ */
+class ZipDirectoryTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsEntriesAndTheirContent() throws IOException {
+        Path jar = new TestJars(dir)
+                .add("a/A.txt", "alpha")
+                .add("b/B.txt", "beta")
+                .write("plain.jar");
+
+        try (FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+            ZipDirectory directory = ZipDirectory.read(channel);
+
+            assertFalse(directory.isZip64());
+            assertEquals(3, directory.getEntries().size());
+            assertEquals("alpha", content(directory, "a/A.txt"));
+            assertEquals("beta", content(directory, "b/B.txt"));
+        }
+    }
+
+    @Test
+    void findsTheEndHeaderBeforeAnArchiveComment() throws IOException {
+        Path jar = dir.resolve("comment.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            out.setComment("x".repeat(1000) + "PK\u0005\u0006");
+            out.putNextEntry(new ZipEntry("a/A.txt"));
+            out.write("alpha".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+
+        try (FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+            ZipDirectory directory = ZipDirectory.read(channel);
+
+            assertEquals(1, directory.getEntries().size());
+            assertEquals("alpha", content(directory, "a/A.txt"));
+        }
+    }
+
+    @Test
+    void readsJarsWithAPrefix() throws IOException {
+        Path plain = new TestJars(dir)
+                .add("a/A.txt", "alpha")
+                .write("plain.jar");
+        byte[] prefix = "#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes(StandardCharsets.UTF_8);
+        Path jar = dir.resolve("prefixed.jar");
+        try (OutputStream out = Files.newOutputStream(jar)) {
+            out.write(prefix);
+            Files.copy(plain, out);
+        }
+
+        try (FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+            ZipDirectory directory = ZipDirectory.read(channel);
+
+            assertEquals(prefix.length, directory.getPrefixLength());
+            assertEquals(2, directory.getEntries().size());
+            assertEquals("alpha", content(directory, "a/A.txt"));
+        }
+    }
+
+    @Test
+    void readsZip64Directories() throws IOException {
+        // more than 0xFFFF entries make ZipOutputStream write a zip64 END header
+        int count = 0x10000 + 10;
+        Path jar = dir.resolve("zip64.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            out.setLevel(0);
+            for (int i = 0; i < count; i++) {
+                out.putNextEntry(new ZipEntry("e/" + i));
+                out.closeEntry();
+            }
+            out.putNextEntry(new ZipEntry("last.txt"));
+            out.write("omega".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+
+        try (FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+            ZipDirectory directory = ZipDirectory.read(channel);
+
+            assertTrue(directory.isZip64());
+            assertEquals(count + 1, directory.getEntries().size());
+            assertEquals("omega", content(directory, "last.txt"));
+        }
+    }
+
+    @Test
+    void readsStoredEntries() throws IOException {
+        byte[] bytes = "stored content".getBytes(StandardCharsets.UTF_8);
+        Path jar = dir.resolve("stored.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            ZipEntry entry = new ZipEntry("s.txt");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(bytes.length);
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            entry.setCrc(crc.getValue());
+            out.putNextEntry(entry);
+            out.write(bytes);
+            out.closeEntry();
+        }
+
+        try (FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+            ZipDirectory directory = ZipDirectory.read(channel);
+            ZipDirectory.Entry entry = directory.getEntries().get(0);
+
+            assertEquals(ZipDirectory.STORED, entry.getMethod());
+            assertArrayEquals(bytes, directory.read(entry));
+        }
+    }
+
+    private static String content(ZipDirectory directory, String name) throws IOException {
+        for (ZipDirectory.Entry entry : directory.getEntries()) {
+            if (entry.getName().equals(name)) {
+                return new String(directory.read(entry), StandardCharsets.UTF_8);
+            }
+        }
+        throw new AssertionError("no entry " + name);
+    }
+
+}